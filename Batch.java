@@ -0,0 +1,156 @@
+package gitlet;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs many gitlet commands with one load and one save of the
+ * repository. Usage: java gitlet.Main batch [FILE], which reads one
+ * command per line from FILE, or from standard input if FILE is not
+ * given. A line holds the words a command would be given on the command
+ * line, without gitlet.Main; words are split at spaces and may be
+ * quoted as in a shell, with single quotes, double quotes or
+ * backslashes. Blank lines and lines starting with # are skipped, and a
+ * line holding checkpoint saves the repository as it is so far.
+ *
+ * Each command prints what it would print when run alone. A command
+ * that fails is reported on standard error and the rest are still run;
+ * a summary of the batch ends it, and the batch exits with status 1 if
+ * any command failed.
+ * @author Noor Gill */
+class Batch {
+
+    /** The line that saves the repository in the middle of a batch. */
+    private static final String CHECKPOINT = "checkpoint";
+
+    /** Runs the commands of a batch.
+     * @param repo the repository, or null if there is none.
+     * @param args batch, then the file of commands, if any.
+     * @return the repository after the last command. */
+    static Tree run(Tree repo, String... args) {
+        if (args.length > 2) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        int run = 0;
+        int failed = 0;
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(
+                open(args), StandardCharsets.UTF_8))) {
+            int number = 0;
+            for (String line = lines.readLine(); line != null;
+                 line = lines.readLine()) {
+                number += 1;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                if (trimmed.equals(CHECKPOINT)) {
+                    Main.serialization(repo);
+                    continue;
+                }
+                run += 1;
+                Utils.failed();
+                boolean ok;
+                try {
+                    String[] command = words(trimmed);
+                    if (command == null) {
+                        Utils.fail("Unclosed quote.");
+                    } else if (command[0].equals("batch")
+                            || command[0].equals("daemon")) {
+                        Utils.fail("A batch cannot run %s.", command[0]);
+                    } else {
+                        repo = Main.perform(repo, command);
+                    }
+                    ok = !Utils.failed();
+                } catch (RuntimeException e) {
+                    System.err.println("batch: line " + number + ": "
+                            + e);
+                    ok = false;
+                }
+                if (!ok) {
+                    failed += 1;
+                    System.err.println("batch: line " + number
+                            + ": failed: " + trimmed);
+                }
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot read batch: %s", e.getMessage());
+        }
+        Main.serialization(repo);
+        System.err.println("batch: " + run + " commands run, " + failed
+                + " failed");
+        if (failed > 0) {
+            Utils.noteFailure();
+        }
+        return repo;
+    }
+
+    /** Opens the commands of a batch.
+     * @param args batch, then the file of commands, if any.
+     * @return the commands. */
+    private static InputStream open(String... args) throws IOException {
+        return args.length == 2 ? new FileInputStream(args[1]) : System.in;
+    }
+
+    /** Splits a line into words as a shell would: at unquoted spaces,
+     * with text in single quotes taken as it is, text in double quotes
+     * taken as it is but for \" and \\, and a character after a
+     * backslash taken as it is.
+     * @param line the line, which is not blank.
+     * @return the words, or null if a quote is not closed. */
+    private static String[] words(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            i += 1;
+            if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    result.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+                continue;
+            }
+            inWord = true;
+            if (c == '\'') {
+                int end = line.indexOf('\'', i);
+                if (end < 0) {
+                    return null;
+                }
+                word.append(line, i, end);
+                i = end + 1;
+            } else if (c == '"') {
+                while (i < line.length() && line.charAt(i) != '"') {
+                    char d = line.charAt(i);
+                    if (d == '\\' && i + 1 < line.length()
+                            && (line.charAt(i + 1) == '"'
+                            || line.charAt(i + 1) == '\\')) {
+                        i += 1;
+                        d = line.charAt(i);
+                    }
+                    word.append(d);
+                    i += 1;
+                }
+                if (i == line.length()) {
+                    return null;
+                }
+                i += 1;
+            } else if (c == '\\' && i < line.length()) {
+                word.append(line.charAt(i));
+                i += 1;
+            } else {
+                word.append(c);
+            }
+        }
+        if (inWord) {
+            result.add(word.toString());
+        }
+        return result.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,416 @@
+package gitlet;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/** The content-addressed store holding every version of every file.
+ * Each blob lives at .gitlet/objects/XX/YYYY..., where XX is the first
+ * two characters of its SHA1 identification and YYYY... the rest, so a
+ * given content is written exactly once however many commits use it.
+ * Blobs consolidated by repack are read from the packs instead, which
+ * are checked before the loose blobs.
+ *
+ * A new version of a file may instead be stored as a delta against the
+ * previous version, in .gitlet/objects/XX/YYYY....delta, holding the id
+ * of its base, its depth in the chain of deltas and the delta itself.
+ * Chains are at most delta.depth deep, and the contents rebuilt while
+ * reading them are kept in a cache of delta.cacheBytes bytes.
+ *
+ * Blobs and deltas that compress well are stored deflated (see
+ * Compression), with names ending in .z. A file of COPY_SIZE bytes or
+ * more whose start does not compress is stored whole, copied from the
+ * working tree with FileChannel.transferTo without being read, and is
+ * copied back out the same way.
+ * @author Noor Gill */
+class Blobs {
+
+    /** The directory holding all of the blobs. */
+    static final File OBJECTS = Utils.join(Storage.GITLET, "objects");
+    /** Number of leading id characters naming the fan-out directory. */
+    private static final int FANOUT = 2;
+    /** Kind of a stored object holding the plain contents of a blob. */
+    static final byte RAW = 0;
+    /** Kind of a stored object holding a delta against another blob. */
+    static final byte DELTA = 1;
+    /** Flag added to the kind of a stored object whose contents, or
+     * delta, are deflated. */
+    static final byte DEFLATED = 0x10;
+    /** Ending of the name of a loose delta. */
+    private static final String DELTA_SUFFIX = ".delta";
+    /** Ending of the name of a loose deflated object. */
+    private static final String DEFLATED_SUFFIX = ".z";
+    /** Endings of the names of each form of a loose object. */
+    private static final String[] SUFFIXES = {"", DEFLATED_SUFFIX,
+        DELTA_SUFFIX, DELTA_SUFFIX + DEFLATED_SUFFIX};
+    /** Length of the id and depth heading a stored delta. */
+    private static final int DELTA_HEADER = Utils.UID_LENGTH + 1;
+    /** Default greatest length of a chain of deltas. */
+    static final int DEFAULT_DEPTH = 10;
+    /** Default smallest file stored as a delta. */
+    static final int DEFAULT_MIN_DELTA = 512;
+    /** Smallest file stored by copying it whole, when it does not
+     * compress. */
+    static final int COPY_SIZE = 1 << 16;
+    /** Number of leading bytes of a file tried for compression. */
+    private static final int SAMPLE = 1 << 16;
+    /** Default budget, in bytes, of the cache of rebuilt blobs. */
+    static final long DEFAULT_CACHE = 32L << 20;
+
+    /** Recently rebuilt blob contents, least recently used first. */
+    private static final LinkedHashMap<String, byte[]> CACHE =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /** Bytes held in CACHE. */
+    private static long cached;
+
+    /** Retrieve the location of the blob with the given id.
+     * @param id the SHA1 id of the blob.
+     * @return the file holding the blob. */
+    static File path(String id) {
+        return Utils.join(OBJECTS, id.substring(0, FANOUT),
+                id.substring(FANOUT));
+    }
+
+    /** Retrieve the loose file holding the blob with the given id, in
+     * whichever form it was stored.
+     * @param id the SHA1 id of the blob.
+     * @return the loose file, or null if the blob is not loose. */
+    private static File looseFile(String id) {
+        for (String suffix : SUFFIXES) {
+            File file = Utils.join(OBJECTS, id.substring(0, FANOUT),
+                    id.substring(FANOUT) + suffix);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /** Checks if the blob with the given id is stored.
+     * @param id the SHA1 id of the blob.
+     * @return boolean that is true if yes and false if no. */
+    static boolean contains(String id) {
+        return id != null && (looseFile(id) != null || Pack.contains(id));
+    }
+
+    /** Saves the contents of a file under the given id, unless a blob
+     * with that id is already stored.
+     * @param id the SHA1 id of the contents.
+     * @param source the file whose contents are saved. */
+    static void store(String id, File source) {
+        store(id, source, null);
+    }
+
+    /** Saves the contents of a file under the given id, unless a blob
+     * with that id is already stored. The contents are stored as a delta
+     * against BASE if that is less than half their size and does not
+     * make the chain of deltas too long, and are deflated if that saves
+     * enough.
+     * @param id the SHA1 id of the contents.
+     * @param source the file whose contents are saved.
+     * @param base the id of the previous version of the file, or null. */
+    static void store(String id, File source, String base) {
+        if (contains(id)) {
+            return;
+        }
+        if (source.length() >= COPY_SIZE && !compressible(source)) {
+            File blob = path(id);
+            blob.getParentFile().mkdirs();
+            Durable.copy(source, blob);
+            return;
+        }
+        store(id, Utils.readContents(source), base);
+    }
+
+    /** Checks whether the start of a file compresses well enough that
+     * the whole of it is likely to.
+     * @param source the file.
+     * @return boolean that is true if yes and false if no. */
+    private static boolean compressible(File source) {
+        byte[] sample = new byte[SAMPLE];
+        int length = 0;
+        try (InputStream in = new FileInputStream(source)) {
+            length = in.readNBytes(sample, 0, SAMPLE);
+        } catch (IOException e) {
+            throw Utils.error("Cannot read %s.", source);
+        }
+        return Compression.compress(Arrays.copyOf(sample, length)) != null;
+    }
+
+    /** Saves CONTENTS under the given id, unless a blob with that id is
+     * already stored, as a delta against BASE or deflated as for a file.
+     * @param id the SHA1 id of the contents.
+     * @param contents the contents saved.
+     * @param base the id of the previous version, or null. */
+    static void store(String id, byte[] contents, String base) {
+        if (contains(id)) {
+            return;
+        }
+        String name = id.substring(FANOUT);
+        byte[] header = new byte[0];
+        byte[] payload = contents;
+        if (base != null && !base.equals(id)
+                && contents.length >= Config.getInt("delta.minSize",
+                        DEFAULT_MIN_DELTA) && contains(base)) {
+            int depth = depth(base) + 1;
+            if (depth <= Config.getInt("delta.depth", DEFAULT_DEPTH)) {
+                byte[] delta = Delta.encode(read(base), contents);
+                if (delta.length < contents.length / 2) {
+                    name += DELTA_SUFFIX;
+                    header = (base + (char) depth).getBytes(
+                            StandardCharsets.ISO_8859_1);
+                    payload = delta;
+                }
+            }
+        }
+        byte[] deflated = Compression.compress(payload);
+        if (deflated != null) {
+            name += DEFLATED_SUFFIX;
+            payload = deflated;
+        }
+        File blob = Utils.join(OBJECTS, id.substring(0, FANOUT), name);
+        blob.getParentFile().mkdirs();
+        Durable.write(blob, header, payload);
+    }
+
+    /** Retrieve the contents of a blob, rebuilding it from its chain of
+     * deltas if need be.
+     * @param id the SHA1 id of the blob.
+     * @return the contents of the blob. */
+    static byte[] read(String id) {
+        byte[] result;
+        synchronized (CACHE) {
+            result = CACHE.get(id);
+        }
+        if (result != null) {
+            return result;
+        }
+        byte[] entry = entry(id);
+        if (entry[0] == RAW) {
+            return Arrays.copyOfRange(entry, 1, entry.length);
+        }
+        result = decode(id, entry);
+        remember(id, result);
+        return result;
+    }
+
+    /** Opens the contents of a blob for reading. A loose blob stored
+     * whole is read straight from its file; any other is rebuilt first.
+     * @param id the SHA1 id of the blob.
+     * @return a stream of its contents. */
+    static InputStream open(String id) throws IOException {
+        File blob = plainFile(id);
+        if (blob != null) {
+            return new FileInputStream(blob);
+        }
+        return new ByteArrayInputStream(read(id));
+    }
+
+    /** Retrieve the loose file holding a blob stored whole, neither
+     * packed, deflated nor as a delta, whose bytes are the blob's
+     * contents exactly.
+     * @param id the SHA1 id of the blob.
+     * @return the file, or null if the blob is stored some other way. */
+    static File plainFile(String id) {
+        if (Pack.contains(id)) {
+            return null;
+        }
+        File blob = looseFile(id);
+        if (blob != null && blob.getName().length()
+                == Utils.UID_LENGTH - FANOUT) {
+            return blob;
+        }
+        return null;
+    }
+
+    /** Makes a file a hard link to the file of a blob stored whole,
+     * which is made read-only first so that the link is too.
+     * @param id the SHA1 id of the blob.
+     * @param target the file made, which must not exist.
+     * @return boolean that is true if the link was made and false if
+     * the blob is not stored whole or the file system cannot link. */
+    static boolean link(String id, File target) {
+        File blob = plainFile(id);
+        if (blob == null) {
+            return false;
+        }
+        try {
+            blob.setReadOnly();
+            Files.createLink(target.toPath(), blob.toPath());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /** Writes the contents of a blob to a file, copying them straight
+     * from the blob's file with FileChannel.transferTo if it is stored
+     * whole.
+     * @param id the SHA1 id of the blob.
+     * @param target the file written. */
+    static void copy(String id, File target) {
+        File blob = plainFile(id);
+        if (blob != null) {
+            Utils.copyContents(blob, target);
+        } else {
+            Utils.writeContents(target, read(id));
+        }
+    }
+
+    /** Retrieve the stored form of a blob from a pack or a loose file.
+     * @param id the SHA1 id of the blob.
+     * @return its kind byte followed by its stored bytes. */
+    private static byte[] entry(String id) {
+        byte[] entry = Pack.find(id);
+        if (entry != null) {
+            return entry;
+        }
+        File blob = looseFile(id);
+        if (blob == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        return looseEntry(blob);
+    }
+
+    /** Retrieve the contents of a blob from its stored form.
+     * @param id the SHA1 id of the blob.
+     * @param entry its kind byte followed by its stored bytes.
+     * @return the contents of the blob. */
+    private static byte[] decode(String id, byte[] entry) {
+        int kind = entry[0] & ~DEFLATED;
+        int start = kind == DELTA ? 1 + DELTA_HEADER : 1;
+        byte[] payload;
+        if ((entry[0] & DEFLATED) != 0) {
+            payload = Compression.inflate(entry, start);
+        } else {
+            payload = Arrays.copyOfRange(entry, start, entry.length);
+        }
+        switch (kind) {
+        case RAW:
+            return payload;
+        case DELTA:
+            String base = new String(entry, 1, Utils.UID_LENGTH,
+                    StandardCharsets.US_ASCII);
+            byte[] baseContents = read(base);
+            remember(base, baseContents);
+            return Delta.apply(baseContents, payload);
+        default:
+            throw Utils.error("Corrupt object %s.", id);
+        }
+    }
+
+    /** Retrieve the blob that a blob stored as a delta is rebuilt from.
+     * @param id the SHA1 id of the blob.
+     * @return the id of its base, or null if it is stored whole or not
+     * at all. */
+    static String base(String id) {
+        byte[] entry = Pack.find(id);
+        if (entry == null) {
+            File blob = looseFile(id);
+            if (blob == null || !blob.getName().replace(DEFLATED_SUFFIX, "")
+                    .endsWith(DELTA_SUFFIX)) {
+                return null;
+            }
+            entry = looseEntry(blob);
+        }
+        if ((entry[0] & ~DEFLATED) != DELTA) {
+            return null;
+        }
+        return new String(entry, 1, Utils.UID_LENGTH,
+                StandardCharsets.US_ASCII);
+    }
+
+    /** Retrieve the depth of a blob in its chain of deltas.
+     * @param id the SHA1 id of the blob.
+     * @return 0 if it is stored whole, or else its depth. */
+    private static int depth(String id) {
+        byte[] entry = entry(id);
+        return (entry[0] & ~DEFLATED) == DELTA ? entry[DELTA_HEADER] : 0;
+    }
+
+    /** Keeps rebuilt contents in the cache, evicting the least recently
+     * used contents beyond the delta.cacheBytes budget.
+     * @param id the SHA1 id of the blob.
+     * @param contents its contents. */
+    private static void remember(String id, byte[] contents) {
+        long budget = Config.getLong("delta.cacheBytes", DEFAULT_CACHE);
+        synchronized (CACHE) {
+            if (contents.length > budget || CACHE.containsKey(id)) {
+                return;
+            }
+            CACHE.put(id, contents);
+            cached += contents.length;
+            Iterator<byte[]> eldest = CACHE.values().iterator();
+            while (cached > budget) {
+                cached -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /** Retrieve every loose blob file, whole or delta.
+     * @return the loose blob files. */
+    static List<File> looseFiles() {
+        List<File> result = new ArrayList<>();
+        File[] dirs = OBJECTS.listFiles();
+        if (dirs == null) {
+            return result;
+        }
+        for (File dir : dirs) {
+            List<String> names = Utils.plainFilenamesIn(dir);
+            if (names != null) {
+                for (String name : names) {
+                    result.add(new File(dir, name));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Retrieve the id of a loose blob from its location.
+     * @param file the loose blob file.
+     * @return its SHA1 id. */
+    static String looseId(File file) {
+        String name = file.getName();
+        int dot = name.indexOf('.');
+        if (dot >= 0) {
+            name = name.substring(0, dot);
+        }
+        return file.getParentFile().getName() + name;
+    }
+
+    /** Retrieve the ids of every stored blob, loose or packed.
+     * @return the blob ids. */
+    static List<String> ids() {
+        List<String> result = Pack.ids();
+        for (File file : looseFiles()) {
+            result.add(looseId(file));
+        }
+        return result;
+    }
+
+    /** Retrieve the stored form of a loose blob.
+     * @param file the loose blob file.
+     * @return its kind byte followed by its stored bytes. */
+    static byte[] looseEntry(File file) {
+        byte[] contents = Utils.readContents(file);
+        byte[] entry = new byte[contents.length + 1];
+        String name = file.getName();
+        if (name.endsWith(DEFLATED_SUFFIX)) {
+            entry[0] = DEFLATED;
+            name = name.substring(0, name.length()
+                    - DEFLATED_SUFFIX.length());
+        }
+        entry[0] |= name.endsWith(DELTA_SUFFIX) ? DELTA : RAW;
+        System.arraycopy(contents, 0, entry, 1, contents.length);
+        return entry;
+    }
+}
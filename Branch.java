@@ -1,10 +1,16 @@
 package gitlet;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 
 /** Class representing a branch that points to sequences of related commits.
  * @author Noor Gill */
-class Branch implements Serializable {
+class Branch {
 
     /** Branch name.*/
     private String branch;
@@ -69,23 +75,23 @@ class Branch implements Serializable {
         staging = new Stage(recentCommit);
     }
 
-    /** Returns the split point of 2 branches.
+    /** Returns the split point of 2 branches, their merge base in the
+     * commit graph.
      * @param x first branch.
      * @param y second branch. */
-    private Commit splitPoint(Branch x, Branch y) {
-        Commit xCommit = x.getRecentCommit();
-        Commit yCommit = y.getRecentCommit();
-        int diff = y.length() - y.length();
-        for (int i = 0; i < diff; i++) {
-            xCommit = xCommit.getParentCommit();
-        }
-        while (!xCommit.equals(yCommit)) {
-            xCommit = xCommit.getParentCommit();
-            yCommit = yCommit.getParentCommit();
-        }
-        return xCommit;
+    Commit splitPoint(Branch x, Branch y) {
+        String base = CommitGraph.mergeBase(x.getRecentCommit().getSHA(),
+                y.getRecentCommit().getSHA());
+        return CommitCache.shared().get(base);
     }
-    /** Merges the current branch with.
+    /** Merges the current branch with. Only the files whose blobs
+     * differ between the two heads are visited, found by comparing
+     * their manifests. Each is compared with the split point: a file
+     * the given branch left as it was keeps the current version, added,
+     * changed or deleted; a file the current branch left as it was takes
+     * the given version, deleted or written, the written ones together,
+     * several at a time (see Checkout); and a file both branches changed
+     * is merged (see checkForConflict).
      * @param branchy another branch. */
     void merge(Branch branchy) {
         Commit givenHead = branchy.getRecentCommit();
@@ -96,85 +102,72 @@ class Branch implements Serializable {
             System.out.println("Given branch is an "
                     + "ancestor of the current branch.");
         }
-        if (!staging.getStagedToClear().isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-        }
         if (currHead.equals(splitter)) {
             recentCommit = givenHead;
             System.out.println("Current branch fast-forwarded.");
         }
-        for (String fileName : givenHead.getFileUpdatedToStage()) {
-            if (!splitter.contains(fileName) && !currHead.contains(fileName)) {
-                givenHead.checkout(fileName);
-                stageAFile(fileName);
-            } else if (!givenHead.altered(currHead, fileName)) {
-                checkForConflict(currHead, givenHead, fileName);
-            } else if (currHead.contains(fileName)
-                    && currHead.altered(splitter, fileName)) {
-                File tester = new File(fileName);
-                if (tester.exists()) {
-                    String check1 = givenHead.getCommitDir();
-                    String check2 = givenHead.getFileMapped().get(fileName);
-                    String check3 = givenHead.getDash() + fileName;
-                    Utils.writeContents(tester,
-                            Utils.readContentsAsString(
-                                    new File(check1 + check2 + check3)));
-                }
-            } else if (splitter.contains(fileName)
-                && givenHead.altered(splitter, fileName)) {
-                return;
-            }
-        }
-        for (String fileName : currHead.getFileUpdatedToStage()) {
-            if (currHead.altered(splitter, fileName)
-                    && !givenHead.contains(fileName)) {
+        Map<String, String> taken = new TreeMap<>();
+        for (Manifest.Change change : currHead.changesTo(givenHead)) {
+            String fileName = change.path();
+            String split = splitter.blob(fileName);
+            if (Objects.equals(change.after(), split)) {
+                continue;
+            } else if (!Objects.equals(change.before(), split)) {
+                checkForConflict(splitter, currHead, givenHead, fileName);
+            } else if (change.after() == null) {
                 removeAFile(fileName);
-            } else if (!givenHead.altered(currHead, fileName)) {
-                checkForConflict(currHead, givenHead, fileName);
-            } else if (!splitter.contains(fileName)
-                    && !givenHead.contains(fileName)) {
-                return;
+            } else {
+                taken.put(fileName, change.after());
             }
         }
+        Checkout.write(taken);
+        for (String fileName : taken.keySet()) {
+            stageAFile(fileName);
+        }
         String message = "Merged " + branchy.getBranch()
                 + " into " + this.getBranch() + ".";
-        commit(message, currHead.getSHA().substring(0, 6),
-                givenHead.getSHA().substring(0, 6));
+        commit(message, currHead.getSHA(), givenHead.getSHA());
         if (conflict) {
-            System.out.println("Encountered a merge conflict.");
+            Utils.fail("Encountered a merge conflict.");
         }
     }
 
-    /** Based on the conflicts in the.
+    /** Merges a file changed in both heads line by line against the
+     * split point (see Merge3) and stages the result. Only the regions
+     * changed differently on the two sides are left between conflict
+     * markers; a file deleted on one side conflicts as a whole.
+     * @param split the split point.
      * @param current current head
      * @param given given head,
      *                  it changes the files in the
      * @param add working directory. */
-    private void checkForConflict(Commit current,
+    private void checkForConflict(Commit split, Commit current,
                                   Commit given, String add) {
-        String head1 = "";
-        String head2 = "";
-        if (given.contains(add)) {
-            head2 = Utils.readContentsAsString(given.getFile(add));
-        }
-        if (current.contains(add)) {
-            head1 = Utils.readContentsAsString(current.getFile(add));
+        String ours = current.blob(add);
+        String theirs = given.blob(add);
+        if (ours == null || theirs == null) {
+            byte[] head1 = ours == null ? new byte[0] : current.getFile(add);
+            byte[] head2 = theirs == null ? new byte[0] : given.getFile(add);
+            Checkout.release(new File(add));
+            Utils.writeContents(new File(add), Merge3.OURS_MARKER,
+                    head1, Merge3.THEIRS_MARKER, head2, Merge3.END_MARKER);
+            conflict = true;
+            stageAFile(add);
+            return;
         }
-        Utils.writeContents(new File(add), "<<<<<<< HEAD\n",
-                head1, "=======\n", head2, ">>>>>>>\n");
-        conflict = true;
-    }
-
-    /** Retrieves the length of the current branch.
-     * @return an integer representing branch length. */
-    private int length() {
-        int counter = 0;
-        Commit current = recentCommit;
-        while (current != null) {
-            current = current.getParentCommit();
-            counter++;
+        Merge3 merge = new Merge3(
+                Lines.ofBlob(split.blob(add)),
+                Lines.ofBlob(ours), Lines.ofBlob(theirs));
+        Checkout.release(new File(add));
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(add))) {
+            if (merge.write(out)) {
+                conflict = true;
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot write %s.", add);
         }
-        return counter;
+        stageAFile(add);
     }
 
     /** A commit with message for staging.
@@ -0,0 +1,154 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Writes the files of a commit into the working tree, several at a
+ * time. Each file is read from the blob store and written out by one
+ * task on a pool of checkout.threads threads (twice the number of
+ * processors by default), so while some threads inflate or rebuild a
+ * blob others are writing theirs, and at most that many files are held
+ * in memory at once. A file that cannot be written does not stop the
+ * others; every failure is reported together once all are done.
+ *
+ * A blob stored whole is copied out with FileChannel.transferTo. With
+ * the checkout.links setting true, such a file is instead made a hard
+ * link to the blob, which costs no copying at all; the blob is made
+ * read-only, and gitlet always deletes a working file before writing
+ * it, so that the blob is never changed through the link. Files are
+ * copied as before where the file system cannot link.
+ * @author Noor Gill */
+class Checkout {
+
+    /** The pool that files are written on, made when first needed. */
+    private static ExecutorService pool;
+
+    /** Retrieve the pool that files are written on.
+     * @return the pool. */
+    private static synchronized ExecutorService pool() {
+        if (pool == null) {
+            int threads = Config.getInt("checkout.threads",
+                    2 * Runtime.getRuntime().availableProcessors());
+            pool = Executors.newFixedThreadPool(Math.max(1, threads),
+                task -> {
+                    Thread thread = new Thread(task, "gitlet-checkout");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+        return pool;
+    }
+
+    /** Changes the working tree from one commit to another: deletes each
+     * file the second commit lacks and then writes each file it changes.
+     * Deleting first lets a file take the place of a directory that was
+     * emptied, and the other way round.
+     * @param changes the changes between the commits, as from
+     * Commit.changesTo. */
+    static void apply(List<Manifest.Change> changes) {
+        Map<String, String> files = new TreeMap<>();
+        for (Manifest.Change change : changes) {
+            if (change.after() == null) {
+                delete(change.path());
+            } else {
+                files.put(change.path(), change.after());
+            }
+        }
+        write(files);
+    }
+
+    /** Writes files of the working tree from their blobs in parallel,
+     * printing why for each one that could not be written.
+     * @param files the blob id of each file, by path. */
+    static void write(Map<String, String> files) {
+        List<String> paths = new ArrayList<>(files.keySet());
+        List<Future<String>> tasks = new ArrayList<>();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            tasks.add(pool().submit(
+                () -> attempt(file.getKey(), file.getValue())));
+        }
+        List<String> errors = new ArrayList<>();
+        for (Future<String> task : tasks) {
+            try {
+                errors.add(task.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Utils.error("Checkout interrupted.");
+            } catch (ExecutionException e) {
+                errors.add(String.valueOf(e.getCause().getMessage()));
+            }
+        }
+        report(paths, errors);
+    }
+
+    /** Writes one file of the working tree from its blob, making the
+     * directories above it as needed.
+     * @param path the path of the file.
+     * @param blob the blob id.
+     * @return why the file could not be written, or null if it was. */
+    private static String attempt(String path, String blob) {
+        File file = new File(path);
+        try {
+            File parent = file.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            release(file);
+            if (!Config.getBoolean("checkout.links", false)
+                    || !Blobs.link(blob, file)) {
+                Blobs.copy(blob, file);
+            }
+            Index.shared().record(file, blob);
+            return null;
+        } catch (GitletException | IllegalArgumentException e) {
+            return String.valueOf(e.getMessage());
+        }
+    }
+
+    /** Prints each file that could not be written, in order of path.
+     * @param paths the files written.
+     * @param errors why each could not be written, or null if it was. */
+    private static void report(List<String> paths, List<String> errors) {
+        int failed = 0;
+        for (int i = 0; i < paths.size(); i += 1) {
+            String error = errors.get(i);
+            if (error != null) {
+                System.out.println(error.contains(paths.get(i)) ? error
+                        : paths.get(i) + ": " + error);
+                failed += 1;
+            }
+        }
+        if (failed > 1) {
+            Utils.fail("Could not write %d files.", failed);
+        } else if (failed == 1) {
+            Utils.noteFailure();
+        }
+    }
+
+    /** Deletes a working file about to be written, which may be a hard
+     * link to a stored blob, so that writing it makes a new file rather
+     * than changing the blob.
+     * @param file the working file. */
+    static void release(File file) {
+        file.delete();
+    }
+
+    /** Deletes a file of the working tree, and then each directory above
+     * it that it leaves empty.
+     * @param path the path of the file. */
+    private static void delete(String path) {
+        File file = new File(path);
+        file.delete();
+        Index.shared().forget(file);
+        File dir = file.getParentFile();
+        while (dir != null && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/** A thin client of the gitlet Daemon. Usage: java gitlet.Client ARGS,
+ * with the same ARGS as gitlet.Main. The arguments are sent to the
+ * daemon serving the repository in the current directory, and what it
+ * writes is copied to standard output and standard error as it arrives.
+ * If no daemon is serving the repository, the command is run here by
+ * Main instead.
+ *
+ * A request is the number of arguments followed by each as its length
+ * and UTF-8 bytes, and then the length and bytes of the command's
+ * standard input. Only batch without a file reads its input, so only
+ * then is standard input read here and sent; it is empty otherwise.
+ * The reply is a series of frames, each a kind byte
+ * and an int: STDOUT and STDERR frames are followed by that many bytes
+ * of output, and an EXIT frame ends the reply with the exit status.
+ * @author Noor Gill */
+public class Client {
+
+    /** Name of the daemon's socket in the .gitlet directory. */
+    static final String SOCKET_NAME = "daemon.sock";
+    /** Kind of the frame ending a reply. */
+    static final int EXIT = 0;
+    /** Kind of a frame of standard output. */
+    static final int STDOUT = 1;
+    /** Kind of a frame of standard error. */
+    static final int STDERR = 2;
+
+    /** Sends ARGS to the daemon and copies back its output, exiting with
+     * the status of the command.
+     * @param args the command and its operands. */
+    public static void main(String... args) {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(
+                    Path.of(".gitlet", SOCKET_NAME)));
+        } catch (IOException | UnsupportedOperationException e) {
+            Main.main(args);
+            return;
+        }
+        int status;
+        try (channel) {
+            DataOutputStream request = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(
+                            channel)));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                request.writeInt(bytes.length);
+                request.write(bytes);
+            }
+            byte[] input = readsInput(args) ? System.in.readAllBytes()
+                    : new byte[0];
+            request.writeInt(input.length);
+            request.write(input);
+            request.flush();
+            status = copyReply(new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel))));
+        } catch (IOException e) {
+            System.err.println("Lost the gitlet daemon: " + e.getMessage());
+            status = 1;
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Checks whether a command reads its standard input, as batch does
+     * when it is not given a file.
+     * @param args the command and its operands.
+     * @return boolean that is true if yes and false if no. */
+    static boolean readsInput(String... args) {
+        return args.length == 1 && args[0].equals("batch");
+    }
+
+    /** Copies the frames of a reply to standard output and error.
+     * @param reply the reply.
+     * @return the exit status of the command. */
+    private static int copyReply(DataInputStream reply) throws IOException {
+        byte[] buffer = new byte[0];
+        while (true) {
+            int kind = reply.readUnsignedByte();
+            int length = reply.readInt();
+            if (kind == EXIT) {
+                System.out.flush();
+                System.err.flush();
+                return length;
+            }
+            if (buffer.length < length) {
+                buffer = new byte[length];
+            }
+            reply.readFully(buffer, 0, length);
+            PrintStream out = kind == STDERR ? System.err : System.out;
+            out.write(buffer, 0, length);
+        }
+    }
+}
@@ -1,32 +1,44 @@
 package gitlet;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.io.Serializable;
 import java.text.ParseException;
+import java.util.List;
 import java.util.Map;
 import java.util.Date;
 import java.util.Set;
-import java.util.HashMap;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.text.SimpleDateFormat;
-import java.nio.file.Paths;
-import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 /** Defines features of a commit.
  * @author Noor Gill */
 public class Commit implements Serializable {
 
-    /** File name is mapped to its unique SHA1 identification.
-     * This id is directly from parent's but is different if
-     * the file is updated from previous version.*/
+    /** Fixed so that changes to the methods of the class do not stop
+     * saved commits from being read. */
+    private static final long serialVersionUID = -5703695874607012766L;
+    /** Formats the time of a commit in a log. */
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z")
+                    .withZone(ZoneId.systemDefault());
+
+    /** File name is mapped to its unique SHA1 identification, for a
+     * commit saved before manifests; null for any other. */
     private Map<String, String> fileMapped;
     /** File added name mapped to the SHA1 identification
-     * of its commit.*/
+     * of its commit, for a commit saved before manifests. */
     private Map<String, String> filesUpdatedToStage;
-    /** The commit's home directory. */
-    private String commitDir;
-    /** The parent commit of the current, "child" commit. */
-    private Commit parentCommit;
+    /** The id of the manifest of the commit's top directory (see
+     * Manifest), or null for a commit saved before manifests. */
+    private String root;
+    /** Every file of the commit mapped to its blob, once listed. */
+    private transient Map<String, String> files;
+    /** The SHA1 identification of the parent commit of the current,
+     * "child" commit. */
+    private String parentId;
     /** The message for the commit. */
     private String message;
     /** The timestamp for the commit. */
@@ -38,34 +50,93 @@ public class Commit implements Serializable {
     /** The SHA1 identifications of the parents involved in
      * the merge. */
     private String mergeParents;
-    /** Retrieve mapped files.
+    /** The SHA1 identification of the second parent of a merge. */
+    private String mergeParentId;
+    /** Retrieve mapped files, reading the manifest of every directory
+     * of the commit the first time.
      * @return the files names mapped to their SHA ids. */
     Map<String, String> getFileMapped() {
-        return fileMapped;
+        if (fileMapped != null) {
+            return fileMapped;
+        }
+        if (files == null) {
+            files = Manifest.files(root);
+        }
+        return files;
     }
-    /** Retrieve map of file name to directory.
-     * @return the file names mapper to the SHA ids of respective commits. */
+    /** Retrieve the names of the files of the commit.
+     * @return the file names. */
     Set<String> getFileUpdatedToStage() {
-        return filesUpdatedToStage.keySet();
+        return getFileMapped().keySet();
+    }
+    /** Retrieve the blob of one file of the commit.
+     * @param file the file.
+     * @return its SHA id, or null if the commit does not have it. */
+    String blob(String file) {
+        if (fileMapped != null) {
+            return fileMapped.get(file);
+        }
+        if (files != null) {
+            return files.get(file);
+        }
+        return Manifest.lookup(root, file);
     }
-    /** Retrieve the commit directory.
-     * @return the commit directory. */
-    String getCommitDir() {
-        return commitDir;
+    /** Retrieve the id of the manifest of the commit's top directory,
+     * storing the manifests first for a commit saved before them.
+     * @return the manifest id. */
+    String getRoot() {
+        if (root == null) {
+            root = Manifest.update(Manifest.EMPTY, fileMapped);
+        }
+        return root;
+    }
+    /** Adds the id of every stored object the commit needs to RESULT:
+     * the blobs of its files and the manifests listing them.
+     * @param result the ids found so far. */
+    void objects(Set<String> result) {
+        if (fileMapped != null) {
+            result.addAll(fileMapped.values());
+        }
+        if (root != null) {
+            Manifest.objects(root, result);
+        }
+    }
+    /** Finds the files that differ between this commit and another,
+     * skipping each directory whose manifest both share.
+     * @param other the other commit.
+     * @return the files changed, in order of path, with their blobs
+     * here first and in OTHER second. */
+    List<Manifest.Change> changesTo(Commit other) {
+        if (root == null || other.root == null) {
+            return Manifest.compare(getFileMapped(), other.getFileMapped());
+        }
+        return Manifest.compare(root, other.root);
     }
-    /** Retrieve the parent of the current commit.
+    /** Retrieve the parent of the current commit, through the commit
+     * cache.
      * @return the parent of the commit currently being considered. */
     Commit getParentCommit() {
-        return parentCommit;
+        return CommitCache.shared().get(parentId);
+    }
+    /** Retrieve the SHA1 identification of the parent commit.
+     * @return the parent id, or null for the initial commit. */
+    String getParentId() {
+        return parentId;
+    }
+    /** Retrieve the SHA1 identification of the second parent.
+     * @return the id of the merged-in commit, or null if this is not a
+     * merge. */
+    String getMergeParentId() {
+        return mergeParentId;
     }
     /** Retrieve the message of the current commit.
      * @return the message associated with the commit. */
-    private String getMessage() {
+    String getMessage() {
         return message;
     }
     /** Retrieve the timestamp of the current commit.
      * @return the timestamp associated with the commit. */
-    private Date getTime() {
+    Date getTime() {
         return time;
     }
     /** Retrieve the unique SHA1 identification of the current commit.
@@ -74,43 +145,24 @@ public class Commit implements Serializable {
         return sHA;
     }
 
-    /** Retrieve the name of the file.
+    /** Retrieve the committed contents of a file.
      * @param file the file.
-     * @return the file name. */
-    File getFile(String file) {
-        File saver = new File(commitDir + fileMapped.get(file)
-                + File.separator + file);
-        return saver;
-    }
-    /** Retrieve the / symbol used to separate objects in paths.
-     * @return the "/" symbol. */
-    String getDash() {
-        return File.separator;
+     * @return the contents of its blob. */
+    byte[] getFile(String file) {
+        return Blobs.read(blob(file));
     }
 
     /** Obtains information for each commit from the stage.
      * @param snap the stage picture. */
     public Commit(Stage snap) {
-        fileMapped = new HashMap<>();
-        filesUpdatedToStage = new HashMap<>();
         if (snap == null) {
             getTimeStamp();
+            root = Manifest.EMPTY;
         } else {
-            parentCommit = snap.getCurrentCommit();
+            Commit parentCommit = snap.getCurrentCommit();
+            parentId = parentCommit.getSHA();
             time = new Date();
         }
-        if (parentCommit != null) {
-            filesUpdatedToStage.putAll(parentCommit.filesUpdatedToStage);
-            if (snap.getForRemoval() != null) {
-                for (String file : snap.getForRemoval()) {
-                    if (filesUpdatedToStage.containsKey(file)) {
-                        filesUpdatedToStage.remove(file);
-                    }
-                }
-            } else {
-                fileMapped.putAll(parentCommit.fileMapped);
-            }
-        }
     }
     /** Provides the timestamp information for the commit. */
     private void getTimeStamp() {
@@ -130,8 +182,7 @@ public class Commit implements Serializable {
      * @param file the file in question.
      * @return boolean that is true if yes and false if no. */
     boolean contains(String file) {
-        return ((filesUpdatedToStage != null)
-                && (filesUpdatedToStage.containsKey(file)));
+        return blob(file) != null;
     }
 
     /** Creates a commit object of the stage with the message provided.
@@ -150,74 +201,34 @@ public class Commit implements Serializable {
             sHA = Utils.sha1(getTime().toString(), getMessage());
         }
         if (snap != null) {
+            Commit parentCommit = getParentCommit();
+            Map<String, String> changes = new TreeMap<>();
+            if (snap.getForRemoval() != null) {
+                for (String file : snap.getForRemoval()) {
+                    changes.put(file, null);
+                }
+            }
             for (String fileName : snap.getStaged()) {
                 File f = new File(fileName);
-                String id2 = Utils.sha1(Utils.readContentsAsString(f));
-                if (fileMapped.containsKey(fileName)) {
-                    String id1 = fileMapped.get(fileName);
-                    if (!id1.equals(id2)) {
-                        filesUpdatedToStage.put(fileName, sHA);
-                        fileMapped.replace(fileName, id2);
-                    }
-                } else {
-                    filesUpdatedToStage.put(fileName, sHA);
-                    fileMapped.put(fileName, id2);
+                String id2 = Index.shared().hash(f);
+                String id1 = changes.containsKey(fileName)
+                        ? changes.get(fileName) : parentCommit.blob(fileName);
+                if (!id2.equals(id1)) {
+                    changes.put(fileName, id2);
                 }
             }
-        }
-        boolean unchanged = true;
-        if (!unchangedCommit()) {
-            unchanged = false;
-        }
-        if (unchanged) {
-            System.out.println("No changes added to the commit.");
-        } else {
-            commitDir = ".gitlet/objects/" + getSHA() + File.separator;
-            File dir = new File(commitDir);
-            dir.mkdirs();
-            if (filesUpdatedToStage.isEmpty()) {
-                return;
-            }
-            for (String name : filesUpdatedToStage.keySet()) {
-                Path p = Paths.get(commitDir
-                        + fileMapped.get(name) + File.separator + name);
-                try {
-                    Files.createDirectories(p.getParent());
-                    Files.createFile(p);
-                } catch (IOException e) {
-                    System.out.println(e.getMessage());
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                String name = change.getKey();
+                if (change.getValue() != null) {
+                    Blobs.store(change.getValue(), new File(name),
+                            parentCommit.blob(name));
                 }
-                Utils.writeContents(p.toFile(),
-                        Utils.readContentsAsString(new File(name)));
-                filesUpdatedToStage.put(name, commitDir);
             }
-        }
-    }
-    /** Checks whether or not the current commit is the.
-     * same as the parent commit.
-     * @return a boolean indicating whether or not there has been a
-     * change between commits. */
-    private boolean unchangedCommit() {
-        if (parentCommit == null) {
-            return false;
-        }
-        Set prevFiles = parentCommit.getFileUpdatedToStage();
-        Set curFiles = getFileUpdatedToStage();
-        if (curFiles.size() != prevFiles.size()) {
-            return false;
-        }
-        for (String name : filesUpdatedToStage.keySet()) {
-            if (prevFiles.contains(name)) {
-                String curSHA1 = fileMapped.get(name);
-                String prevSHA1 = parentCommit.getFileMapped().get(name);
-                if (!curSHA1.equals(prevSHA1)) {
-                    return false;
-                }
-            } else {
-                return false;
+            root = Manifest.update(parentCommit.getRoot(), changes);
+            if (root.equals(parentCommit.getRoot())) {
+                Utils.fail("No changes added to the commit.");
             }
         }
-        return true;
     }
 
     /** For merges, commits the stage with the given message and parents.
@@ -228,35 +239,25 @@ public class Commit implements Serializable {
     public Commit(Stage snap, String messages, String parent1, String parent2) {
         this(snap, messages);
         hasMerged = true;
-        mergeParents = "Merge: " + parent1 + " " + parent2;
+        mergeParents = "Merge: " + parent1.substring(0, 6) + " "
+                + parent2.substring(0, 6);
+        mergeParentId = parent2;
     }
     /** File is checked out.
      * @param file the file. */
     void checkout(String file) {
-        File filer = new File(file);
-        try {
-            Utils.writeContents(filer, Utils.readContentsAsString(
-                    new File(commitDir + fileMapped.get(file)
-                            + File.separator + file)));
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
-        }
+        Checkout.write(Map.of(file, blob(file)));
     }
-    /** The current commit is checked out. */
-    void checkout() {
-        Set<String> helper = filesUpdatedToStage.keySet();
-        for (String item : helper) {
-            checkout(item);
-        }
-        File gitlet = new File(commitDir);
-        String full = gitlet.getAbsolutePath();
-        String path = full.substring(0, full.length() - commitDir.length() + 1);
-        File newPath = new File(path);
-        for (File file: newPath.listFiles()) {
-            if (!helper.contains(file.getName())) {
-                Utils.restrictedDelete(file);
-            }
-        }
+
+    /** The current commit is checked out over the working tree of
+     * another, given the files that differ between the two: each file
+     * the current commit changes is written, several at a time (see
+     * Checkout), each it lacks is deleted, and every other file is left
+     * as it is.
+     * @param changes the changes from the other commit to this one, as
+     * from changesTo. */
+    void checkout(List<Manifest.Change> changes) {
+        Checkout.apply(changes);
     }
 
     /** Checks whether or not the file has been changed between
@@ -265,32 +266,43 @@ public class Commit implements Serializable {
      * @param fileName the file in question.
      * @return a boolean that is true if no change and false if changed. */
     boolean altered(Commit head, String fileName) {
-        if (fileMapped.containsKey(fileName)) {
-            boolean check1 = head.getFileMapped().containsKey(fileName);
-            boolean check2 = head.getFileMapped().get(fileName).equals(
-                    this.fileMapped.get(fileName));
-            return check1 && check2;
-        }
-        if (head.getFileMapped().containsKey(fileName)) {
-            boolean check1 = getFileMapped().containsKey(fileName);
-            boolean check2 = head.getFileMapped().get(fileName).equals(
-                    this.fileMapped.get(fileName));
-            return check1 && check2;
+        return Objects.equals(blob(fileName), head.blob(fileName));
+    }
+    /** Commits are the same if their SHA1 identifications are.
+     * @param other the object compared with.
+     * @return boolean that is true if the same and false if not. */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Commit
+                && ((Commit) other).getSHA().equals(getSHA());
+    }
+    /** For hashing purposes. */
+    @Override
+    public int hashCode() {
+        return getSHA().hashCode();
+    }
+    /** Writes the entry of the commit in a log to OUT, as toString
+     * returns it.
+     * @param out where the entry is written. */
+    void write(Appendable out) throws IOException {
+        out.append("=== \n").append("commit ").append(sHA).append(" \n");
+        if (hasMerged) {
+            out.append(mergeParents).append("\n");
         }
-        return Utils.readContentsAsString(this.getFile(fileName)).equals(
-                Utils.readContentsAsString(head.getFile(fileName)));
+        out.append("Date: ");
+        DATE_FORMAT.formatTo(time.toInstant(), out);
+        out.append(" \n").append(message);
     }
+
     /** For syntactical purposes. */
     @Override
     public String toString() {
         StringBuilder myString = new StringBuilder();
-        myString.append("=== \n" + "commit " + sHA + " \n");
-        if (hasMerged) {
-            myString.append(mergeParents + "\n");
+        try {
+            write(myString);
+        } catch (IOException e) {
+            throw new AssertionError(e);
         }
-        String timeStamp = new SimpleDateFormat(
-                "EEE MMM d HH:mm:ss yyyy Z").format(time);
-        myString.append("Date: " + timeStamp + " \n" + message);
         return myString.toString();
     }
 
@@ -0,0 +1,121 @@
+package gitlet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of commits read from storage, evicting the least
+ * recently used commit once it holds more than its entry limit or its
+ * byte budget. Every commit is resolved through the shared cache, so a
+ * command only ever reads the commits it walks.
+ * @author Noor Gill */
+class CommitCache {
+
+    /** Default number of commits held. */
+    static final int DEFAULT_ENTRIES = 4096;
+    /** Default budget, in serialized bytes, of the commits held. */
+    static final long DEFAULT_BYTES = 64L << 20;
+
+    /** The cache shared by the whole program. */
+    private static CommitCache shared;
+
+    /** Maps commit ids to their commits, least recently used first. */
+    private final LinkedHashMap<String, Commit> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /** Maps commit ids to the serialized size of their commits. */
+    private final Map<String, Long> sizes = new HashMap<>();
+    /** The most commits held at once. */
+    private final int maxEntries;
+    /** The most serialized bytes of commits held at once. */
+    private final long maxBytes;
+    /** Serialized bytes of the commits held. */
+    private long bytes;
+    /** Number of lookups answered from the cache. */
+    private long hits;
+    /** Number of lookups that read storage. */
+    private long misses;
+
+    /** Constructs an empty cache.
+     * @param limit the most commits held at once.
+     * @param budget the most serialized bytes of commits held at once. */
+    CommitCache(int limit, long budget) {
+        maxEntries = Math.max(1, limit);
+        maxBytes = Math.max(1, budget);
+    }
+
+    /** Retrieve the cache shared by the whole program, sized by the
+     * commitCache.entries and commitCache.bytes settings.
+     * @return the shared cache. */
+    static CommitCache shared() {
+        if (shared == null) {
+            shared = new CommitCache(
+                    Config.getInt("commitCache.entries", DEFAULT_ENTRIES),
+                    Config.getLong("commitCache.bytes", DEFAULT_BYTES));
+        }
+        return shared;
+    }
+
+    /** Retrieve a commit, reading it from storage if it is not held.
+     * @param id the SHA1 id of the commit.
+     * @return the commit, or null if there is none with that id. */
+    Commit get(String id) {
+        if (id == null) {
+            return null;
+        }
+        Commit result = entries.get(id);
+        if (result != null) {
+            hits += 1;
+            return result;
+        }
+        misses += 1;
+        result = Storage.readCommit(id);
+        if (result != null) {
+            put(result, Storage.commitSize(id));
+        }
+        return result;
+    }
+
+    /** Holds a commit, evicting the least recently used ones as needed.
+     * @param commit the commit.
+     * @param size its serialized size in bytes. */
+    void put(Commit commit, long size) {
+        String id = commit.getSHA();
+        if (entries.put(id, commit) != null) {
+            bytes -= sizes.get(id);
+        }
+        sizes.put(id, size);
+        bytes += size;
+        Iterator<String> eldest = entries.keySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes)
+                && entries.size() > 1) {
+            String victim = eldest.next();
+            eldest.remove();
+            bytes -= sizes.remove(victim);
+        }
+    }
+
+    /** Retrieve the number of lookups answered from the cache.
+     * @return the hit count. */
+    long hits() {
+        return hits;
+    }
+
+    /** Retrieve the number of lookups that read storage.
+     * @return the miss count. */
+    long misses() {
+        return misses;
+    }
+
+    /** Retrieve the number of commits held.
+     * @return the number of commits. */
+    int size() {
+        return entries.size();
+    }
+
+    /** For syntactical purposes. */
+    @Override
+    public String toString() {
+        return String.format("commit cache: %d hits, %d misses, "
+                + "%d commits, %d bytes held", hits, misses, size(), bytes);
+    }
+}
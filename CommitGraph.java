@@ -0,0 +1,497 @@
+package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** The commit graph: the parents, generation number, time and tree id
+ * of every commit, kept in .gitlet/commit-graph so that ancestry can be
+ * walked without reading commits. The generation number of a commit is
+ * one more than the greatest of its parents', so every ancestor of a
+ * commit has a smaller one; a merge base is found by walking both
+ * histories from the highest generation down, and the walk stops at the
+ * first commit reached from both.
+ *
+ * The file holds a magic number, a count N, the N ids as 20-byte SHA1
+ * values in ascending order, and then one record per id: the positions
+ * of its first and second parents (-1 if none), its generation, its
+ * time in milliseconds and the 20-byte SHA1 of its files and blobs.
+ * Commits made since it was written are added when the repository is
+ * saved, with any ancestors it lacks. A command holding the shared Lock
+ * never writes the file: the commits it lacks are added to a copy of
+ * the graph held in memory, and the file is left for the next command
+ * that may write.
+ * @author Noor Gill */
+class CommitGraph {
+
+    /** The file holding the graph. */
+    static final File FILE = Utils.join(Storage.GITLET, "commit-graph");
+    /** Marks the start of the file. */
+    private static final int MAGIC = 0x47475048;
+    /** Length of the header of the file. */
+    private static final int HEADER = 8;
+    /** Length of an id as raw bytes. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** Length of the record of one commit. */
+    private static final int RECORD = 4 + 4 + 4 + 8 + ID_BYTES;
+    /** Position standing for a missing parent. */
+    private static final int NONE = -1;
+    /** Marks a commit reached from the first head. */
+    private static final int FROM_FIRST = 1;
+    /** Marks a commit reached from the second head. */
+    private static final int FROM_SECOND = 2;
+
+    /** The mapped file, read when first needed, or the graph as held
+     * in memory. */
+    private static ByteBuffer graph;
+    /** The number of commits in the graph. */
+    private static int count;
+    /** Whether the graph is held in memory only, holding the commits
+     * made since the file was written. */
+    private static boolean unsaved;
+    /** Ids of commits made since the file was written. */
+    private static final List<String> PENDING = new ArrayList<>();
+
+    /** A commit as held in the graph. */
+    private static class Node {
+        /** The id of the first parent, or null. */
+        private String parent;
+        /** The id of the second parent, or null. */
+        private String mergeParent;
+        /** The generation number. */
+        private int generation;
+        /** The commit time in milliseconds. */
+        private long time;
+        /** The id of the files and blobs of the commit. */
+        private byte[] tree;
+    }
+
+    /** Notes a newly saved commit, to be added to the graph on save.
+     * @param id the SHA1 id of the commit. */
+    static synchronized void add(String id) {
+        PENDING.add(id);
+    }
+
+    /** Finds a best common ancestor of two commits: one that is an
+     * ancestor of both and not an ancestor of any other such commit.
+     * @param first the SHA1 id of one commit.
+     * @param second the SHA1 id of the other.
+     * @return the id of the merge base, or null if there is none. */
+    static synchronized String mergeBase(String first, String second) {
+        update(List.of(first, second));
+        int a = position(first);
+        int b = position(second);
+        if (a < 0 || b < 0) {
+            return null;
+        }
+        Map<Integer, Integer> flags = new HashMap<>();
+        Map<Integer, Integer> done = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> {
+            int cmp = Integer.compare(generation(y), generation(x));
+            return cmp != 0 ? cmp : Long.compare(time(y), time(x));
+        });
+        flags.put(a, FROM_FIRST);
+        flags.merge(b, FROM_SECOND, (x, y) -> x | y);
+        queue.add(a);
+        queue.add(b);
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            int mark = flags.get(pos);
+            if (done.getOrDefault(pos, 0) == mark) {
+                continue;
+            }
+            done.put(pos, mark);
+            if (mark == (FROM_FIRST | FROM_SECOND)) {
+                return id(pos);
+            }
+            for (int parent : new int[] {parent(pos, 0), parent(pos, 4)}) {
+                if (parent != NONE) {
+                    int old = flags.getOrDefault(parent, 0);
+                    if ((old | mark) != old) {
+                        flags.put(parent, old | mark);
+                        queue.add(parent);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Lists commits and all of their ancestors, newest first, by
+     * merging their histories: the newest commit not yet listed is
+     * taken from a queue ordered by time, and its parents are added.
+     * Commits are listed as they are taken, so the newest are known
+     * before the rest of the history is walked.
+     * @param heads the SHA1 ids of the commits.
+     * @return the ids, newest first, each listed once. */
+    static synchronized Iterator<String> newestFirst(
+            Collection<String> heads) {
+        update(heads);
+        ByteBuffer mapped = graph;
+        Set<Integer> seen = new HashSet<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(byTime());
+        for (String head : heads) {
+            int pos = position(head);
+            if (pos >= 0 && seen.add(pos)) {
+                queue.add(pos);
+            }
+        }
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return !queue.isEmpty();
+            }
+
+            @Override
+            public String next() {
+                synchronized (CommitGraph.class) {
+                    if (graph != mapped) {
+                        throw new ConcurrentModificationException();
+                    }
+                    int pos = queue.remove();
+                    for (int parent : new int[] {parent(pos, 0),
+                        parent(pos, 4)}) {
+                        if (parent != NONE && seen.add(parent)) {
+                            queue.add(parent);
+                        }
+                    }
+                    return id(pos);
+                }
+            }
+        };
+    }
+
+    /** Retrieve the commits that are no commit's parent: the heads of
+     * branches and of any histories left behind, as by reset.
+     * @return their SHA1 ids. */
+    static synchronized List<String> tips() {
+        update(Collections.emptyList());
+        List<String> result = new ArrayList<>();
+        if (graph == null) {
+            return result;
+        }
+        boolean[] parent = new boolean[count];
+        for (int pos = 0; pos < count; pos += 1) {
+            for (int which : new int[] {0, 4}) {
+                if (parent(pos, which) != NONE) {
+                    parent[parent(pos, which)] = true;
+                }
+            }
+        }
+        for (int pos = 0; pos < count; pos += 1) {
+            if (!parent[pos]) {
+                result.add(id(pos));
+            }
+        }
+        return result;
+    }
+
+    /** Brings the graph up to date with the commits made since the file
+     * was written and with some commits it may lack, with any of their
+     * ancestors it lacks. The file is rewritten if this process may
+     * write the repository (see Lock), and otherwise the graph is built
+     * in memory.
+     * @param ids the SHA1 ids of the commits. */
+    private static void update(Collection<String> ids) {
+        load();
+        boolean missing = graph == null || !PENDING.isEmpty() && !unsaved;
+        for (String id : ids) {
+            missing |= position(id) < 0;
+        }
+        if (!missing) {
+            return;
+        }
+        PENDING.addAll(ids);
+        if (Lock.writable()) {
+            save();
+            load();
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            encode(nodes(), out);
+        } catch (IOException e) {
+            throw Utils.error("Cannot build %s.", FILE.getName());
+        }
+        graph = ByteBuffer.wrap(bytes.toByteArray());
+        count = graph.getInt(4);
+        unsaved = true;
+    }
+
+    /** Orders positions newest first, by time and then generation.
+     * @return the ordering. */
+    private static Comparator<Integer> byTime() {
+        return (x, y) -> {
+            int cmp = Long.compare(time(y), time(x));
+            return cmp != 0 ? cmp
+                    : Integer.compare(generation(y), generation(x));
+        };
+    }
+
+    /** Drops the mapping of the file, so that it is mapped again when
+     * next needed; used when another process may have rewritten it. */
+    static synchronized void forget() {
+        graph = null;
+        unsaved = false;
+    }
+
+    /** Adds the commits made since the file was written, and any of
+     * their ancestors it lacks, rewriting it. The file is built from
+     * every saved commit if it is missing. */
+    static synchronized void save() {
+        load();
+        if (PENDING.isEmpty() && graph != null) {
+            return;
+        }
+        write(nodes());
+        PENDING.clear();
+        graph = null;
+        unsaved = false;
+    }
+
+    /** Retrieve the commits of the graph with those made since the file
+     * was written, and any of their ancestors it lacks; every saved
+     * commit if there is no graph.
+     * @return the commits, by id. */
+    private static TreeMap<String, Node> nodes() {
+        TreeMap<String, Node> nodes = new TreeMap<>();
+        for (int i = 0; graph != null && i < count; i += 1) {
+            Node node = new Node();
+            int p = parent(i, 0);
+            int q = parent(i, 4);
+            node.parent = p == NONE ? null : id(p);
+            node.mergeParent = q == NONE ? null : id(q);
+            node.generation = generation(i);
+            node.time = time(i);
+            node.tree = new byte[ID_BYTES];
+            graph.get(record(i) + 20, node.tree);
+            nodes.put(id(i), node);
+        }
+        List<String> added = new ArrayList<>(PENDING);
+        if (graph == null) {
+            added.addAll(Storage.commitIds());
+        }
+        for (String id : added) {
+            addWithAncestors(id, nodes);
+        }
+        return nodes;
+    }
+
+    /** Rewrites the file from the saved commits alone, as after commits
+     * are deleted. */
+    static synchronized void rebuild() {
+        TreeMap<String, Node> nodes = new TreeMap<>();
+        for (String id : Storage.commitIds()) {
+            addWithAncestors(id, nodes);
+        }
+        write(nodes);
+        PENDING.clear();
+        graph = null;
+        unsaved = false;
+    }
+
+    /** Adds a commit and its ancestors missing from NODES, setting the
+     * generation numbers once their parents' are known.
+     * @param id the SHA1 id of the commit.
+     * @param nodes the commits of the graph, by id. */
+    private static void addWithAncestors(String id,
+                                         TreeMap<String, Node> nodes) {
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            String top = stack.peek();
+            Node node = nodes.get(top);
+            if (node == null) {
+                Commit commit = CommitCache.shared().get(top);
+                if (commit == null) {
+                    stack.pop();
+                    continue;
+                }
+                node = new Node();
+                node.parent = commit.getParentId();
+                node.mergeParent = commit.getMergeParentId();
+                Date time = commit.getTime();
+                node.time = time == null ? 0 : time.getTime();
+                node.tree = Utils.fromHex(treeId(commit));
+                nodes.put(top, node);
+            }
+            if (node.generation > 0) {
+                stack.pop();
+                continue;
+            }
+            boolean ready = true;
+            int generation = 1;
+            for (String parent : new String[] {node.parent,
+                node.mergeParent}) {
+                if (parent == null) {
+                    continue;
+                }
+                Node above = nodes.get(parent);
+                if (above == null || above.generation == 0) {
+                    if (Storage.hasCommit(parent)) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                } else {
+                    generation = Math.max(generation, above.generation + 1);
+                }
+            }
+            if (ready) {
+                node.generation = generation;
+                stack.pop();
+            }
+        }
+    }
+
+    /** Retrieve the id of the files of a commit, the id of its top
+     * manifest (see Manifest).
+     * @param commit the commit.
+     * @return the id. */
+    private static String treeId(Commit commit) {
+        return commit.getRoot();
+    }
+
+    /** Writes the file, through a temporary file so that a mapping of
+     * the old one stays valid.
+     * @param nodes the commits of the graph, by id. */
+    private static void write(TreeMap<String, Node> nodes) {
+        File tmp = Durable.temp(FILE).toFile();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath())))) {
+            encode(nodes, out);
+        } catch (IOException e) {
+            throw Utils.error("Cannot write %s.", FILE.getName());
+        }
+        Durable.replace(tmp, FILE);
+    }
+
+    /** Writes the graph in the format of the file.
+     * @param nodes the commits of the graph, by id.
+     * @param out where it is written.
+     * @throws IOException if it cannot be written. */
+    private static void encode(TreeMap<String, Node> nodes,
+                               DataOutputStream out) throws IOException {
+        List<String> ids = new ArrayList<>(nodes.keySet());
+        out.writeInt(MAGIC);
+        out.writeInt(ids.size());
+        for (String id : ids) {
+            out.write(Utils.fromHex(id));
+        }
+        for (Node node : nodes.values()) {
+            out.writeInt(indexOf(ids, node.parent));
+            out.writeInt(indexOf(ids, node.mergeParent));
+            out.writeInt(node.generation);
+            out.writeLong(node.time);
+            out.write(node.tree);
+        }
+    }
+
+    /** Retrieve the position of an id among sorted ids.
+     * @param ids the sorted ids.
+     * @param id the id, or null.
+     * @return its position, or NONE. */
+    private static int indexOf(List<String> ids, String id) {
+        if (id == null) {
+            return NONE;
+        }
+        int i = Collections.binarySearch(ids, id);
+        return i < 0 ? NONE : i;
+    }
+
+    /** Maps the file if it exists and is not yet mapped. */
+    private static void load() {
+        if (graph != null || !FILE.isFile()) {
+            return;
+        }
+        graph = Pack.map(FILE);
+        if (graph.getInt(0) != MAGIC) {
+            throw Utils.error("Corrupt %s.", FILE.getName());
+        }
+        count = graph.getInt(4);
+    }
+
+    /** Binary-searches the mapped ids for an id.
+     * @param id the SHA1 id of a commit.
+     * @return its position, or -1 if it is absent. */
+    private static int position(String id) {
+        if (graph == null) {
+            return -1;
+        }
+        byte[] key = Utils.fromHex(id);
+        byte[] probe = new byte[ID_BYTES];
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            graph.get(HEADER + mid * ID_BYTES, probe);
+            int cmp = Arrays.compareUnsigned(probe, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Retrieve the id at a position.
+     * @param pos the position.
+     * @return the SHA1 id. */
+    private static String id(int pos) {
+        byte[] result = new byte[ID_BYTES];
+        graph.get(HEADER + pos * ID_BYTES, result);
+        return Utils.toHex(result);
+    }
+
+    /** Retrieve where the record at a position starts.
+     * @param pos the position.
+     * @return its offset in the file. */
+    private static int record(int pos) {
+        return HEADER + count * ID_BYTES + pos * RECORD;
+    }
+
+    /** Retrieve a parent of the commit at a position.
+     * @param pos the position.
+     * @param which 0 for the first parent and 4 for the second.
+     * @return the position of the parent, or NONE. */
+    private static int parent(int pos, int which) {
+        return graph.getInt(record(pos) + which);
+    }
+
+    /** Retrieve the generation number of the commit at a position.
+     * @param pos the position.
+     * @return the generation number. */
+    private static int generation(int pos) {
+        return graph.getInt(record(pos) + 8);
+    }
+
+    /** Retrieve the time of the commit at a position.
+     * @param pos the position.
+     * @return the time in milliseconds. */
+    private static long time(int pos) {
+        return graph.getLong(record(pos) + 12);
+    }
+}
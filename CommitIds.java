@@ -0,0 +1,298 @@
+package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/** Resolves abbreviated commit ids. The ids of every commit are kept in
+ * ascending order in .gitlet/commit-ids, which is memory-mapped, so the
+ * commits matching a prefix are found by a binary search without
+ * reading any commit. The file holds a magic number, a count N and the
+ * N ids as 20-byte SHA1 values.
+ *
+ * Each new commit is appended to .gitlet/commit-ids-log, as 20 bytes,
+ * when the repository is saved, and the log is searched by scanning it.
+ * Once it holds MERGE_AT ids, or when repack or gc runs, it is merged
+ * into a new sorted file, so a commit costs a few bytes written rather
+ * than the whole file.
+ * @author Noor Gill */
+class CommitIds {
+
+    /** The file holding the sorted ids. */
+    static final File FILE = Utils.join(Storage.GITLET, "commit-ids");
+    /** The file holding the ids of commits made since FILE was
+     * written. */
+    static final File LOG = Utils.join(Storage.GITLET, "commit-ids-log");
+    /** Shortest prefix accepted as an abbreviation. */
+    static final int MIN_PREFIX = 4;
+    /** Marks the start of the file. */
+    private static final int MAGIC = 0x47434944;
+    /** Length of the header of the file. */
+    private static final int HEADER = 8;
+    /** Length of an id as raw bytes. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** The number of logged ids at which the log is merged into the
+     * sorted file. */
+    private static final int MERGE_AT = 1024;
+
+    /** The mapped file, read when first needed. */
+    private static MappedByteBuffer ids;
+    /** The number of ids in the mapped file. */
+    private static int count;
+    /** The ids in the log, read when first needed. */
+    private static List<String> logged;
+    /** The length of the whole ids in the log when it was read. */
+    private static long logEnd;
+    /** Ids of commits made since the log was written. */
+    private static final List<String> PENDING = new ArrayList<>();
+
+    /** Notes a newly saved commit, to be added to the file on save.
+     * @param id the SHA1 id of the commit. */
+    static synchronized void add(String id) {
+        PENDING.add(id);
+    }
+
+    /** Retrieve the ids of the commits that begin with a prefix.
+     * @param prefix the start of an id, of at least MIN_PREFIX digits.
+     * @param limit the most ids wanted.
+     * @return at most LIMIT matching ids, in ascending order. */
+    static synchronized List<String> matching(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        prefix = prefix.toLowerCase();
+        if (prefix.length() < MIN_PREFIX || prefix.length() > Utils.UID_LENGTH
+                || !prefix.matches("[0-9a-f]*")) {
+            return result;
+        }
+        if (prefix.length() == Utils.UID_LENGTH) {
+            if (Storage.hasCommit(prefix)) {
+                result.add(prefix);
+            }
+            return result;
+        }
+        load();
+        byte[] probe = new byte[ID_BYTES];
+        for (int i = lowerBound(prefix); i < count && result.size() < limit;
+             i += 1) {
+            ids.get(HEADER + i * ID_BYTES, probe);
+            String id = Utils.toHex(probe);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id);
+        }
+        for (List<String> unsorted : List.of(logged, PENDING)) {
+            for (String id : unsorted) {
+                if (id.startsWith(prefix) && !result.contains(id)) {
+                    result.add(id);
+                }
+            }
+        }
+        if (result.isEmpty() && hasUnlisted(prefix)) {
+            rebuild();
+            return matching(prefix, limit);
+        }
+        Collections.sort(result);
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    /** Finds the first id in the file not less than PREFIX.
+     * @param prefix the start of an id.
+     * @return its position, or the count if there is none. */
+    private static int lowerBound(String prefix) {
+        StringBuilder padded = new StringBuilder(prefix);
+        while (padded.length() < Utils.UID_LENGTH) {
+            padded.append('0');
+        }
+        byte[] key = Utils.fromHex(padded.toString());
+        byte[] probe = new byte[ID_BYTES];
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            ids.get(HEADER + mid * ID_BYTES, probe);
+            if (Arrays.compareUnsigned(probe, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Checks whether a commit beginning with PREFIX was saved without
+     * reaching the file, as when the file is missing or was written by
+     * an interrupted command. Only the one fan-out directory of commits
+     * that could hold it is listed.
+     * @param prefix the start of an id.
+     * @return boolean that is true if yes and false if no. */
+    private static boolean hasUnlisted(String prefix) {
+        for (String id : Storage.commitIds(prefix)) {
+            if (id.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Maps the file and reads the log, writing the file from the saved
+     * commits first if it is missing. */
+    private static void load() {
+        if (ids != null && logged != null) {
+            return;
+        }
+        if (!FILE.isFile()) {
+            write(Storage.commitIds());
+        }
+        ids = Pack.map(FILE);
+        if (ids.getInt(0) != MAGIC) {
+            throw Utils.error("Corrupt %s.", FILE.getName());
+        }
+        count = ids.getInt(4);
+        logged = readLog();
+    }
+
+    /** Reads the ids in the log. A last one that was not written in
+     * full, as by an interrupted command, is skipped; the file is left as
+     * it is, as for the message log (see MessageIndex), and save cuts it
+     * off before appending.
+     * @return the ids, oldest first. */
+    private static List<String> readLog() {
+        List<String> result = new ArrayList<>();
+        logEnd = 0;
+        if (!LOG.isFile()) {
+            return result;
+        }
+        byte[] bytes = Utils.readContents(LOG);
+        byte[] id = new byte[ID_BYTES];
+        for (int at = 0; at + ID_BYTES <= bytes.length; at += ID_BYTES) {
+            System.arraycopy(bytes, at, id, 0, ID_BYTES);
+            result.add(Utils.toHex(id));
+            logEnd = at + ID_BYTES;
+        }
+        return result;
+    }
+
+    /** Rewrites the file from the saved commits, emptying the log, as
+     * after commits are deleted. */
+    static synchronized void rebuild() {
+        write(Storage.commitIds());
+        PENDING.clear();
+        load();
+    }
+
+    /** Merges the log into a new sorted file, if it holds any ids; done
+     * by repack and gc. */
+    static synchronized void compact() {
+        if (!FILE.isFile() || !LOG.isFile()) {
+            return;
+        }
+        load();
+        write(listed());
+    }
+
+    /** Drops the mapping of the file and the ids read from the log, so
+     * that both are read again when next needed; used when another
+     * process may have changed them. */
+    static synchronized void forget() {
+        ids = null;
+        logged = null;
+    }
+
+    /** Logs the commits made since the log was written, after cutting
+     * off any id not written in full, merging the log into a new sorted
+     * file once it is long enough. The file is written from every saved
+     * commit if it is missing. */
+    static synchronized void save() {
+        if (PENDING.isEmpty()) {
+            return;
+        }
+        if (!FILE.isFile()) {
+            write(Storage.commitIds());
+        } else {
+            load();
+            if (logged.size() + PENDING.size() >= MERGE_AT) {
+                write(listed());
+            } else {
+                append();
+            }
+        }
+        PENDING.clear();
+    }
+
+    /** Retrieve the ids of the file, the log and the pending commits.
+     * @return the ids, in no particular order. */
+    private static List<String> listed() {
+        List<String> result = new ArrayList<>(count + logged.size()
+                + PENDING.size());
+        byte[] probe = new byte[ID_BYTES];
+        for (int i = 0; i < count; i += 1) {
+            ids.get(HEADER + i * ID_BYTES, probe);
+            result.add(Utils.toHex(probe));
+        }
+        result.addAll(logged);
+        result.addAll(PENDING);
+        return result;
+    }
+
+    /** Appends the pending commits to the log, first cutting off any id
+     * not written in full. */
+    private static void append() {
+        try {
+            if (LOG.length() > logEnd) {
+                try (RandomAccessFile file = new RandomAccessFile(LOG,
+                        "rw")) {
+                    file.setLength(logEnd);
+                }
+            }
+            try (BufferedOutputStream out = new BufferedOutputStream(
+                    new FileOutputStream(LOG, true))) {
+                for (String id : PENDING) {
+                    out.write(Utils.fromHex(id));
+                }
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot write %s.", LOG.getName());
+        }
+        Durable.written(LOG);
+        logged.addAll(PENDING);
+        logEnd = LOG.length();
+    }
+
+    /** Writes the file, through a temporary file so that a mapping of
+     * the old one stays valid, and empties the log.
+     * @param all the ids, in any order and possibly repeated. */
+    private static void write(List<String> all) {
+        TreeSet<String> sorted = new TreeSet<>();
+        for (String id : all) {
+            if (id.length() == Utils.UID_LENGTH) {
+                sorted.add(id);
+            }
+        }
+        File tmp = Durable.temp(FILE).toFile();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(sorted.size());
+            for (String id : sorted) {
+                out.write(Utils.fromHex(id));
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot write %s.", FILE.getName());
+        }
+        Durable.replace(tmp, FILE);
+        LOG.delete();
+        Durable.deleted(LOG);
+        ids = null;
+        logged = null;
+    }
+}
@@ -0,0 +1,196 @@
+package gitlet;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** Compression of stored objects with Deflater and Inflater. The level
+ * is set by the compression.level setting (0 turns compression off),
+ * and when compression.dictionary is true new objects are compressed
+ * with a preset dictionary built by repack from the repository's own
+ * contents. Every dictionary ever used is kept, named by its Adler-32
+ * checksum, which is what Inflater asks for when reading.
+ * @author Noor Gill */
+class Compression {
+
+    /** The directory holding the preset dictionaries. */
+    static final File DICTIONARIES = Utils.join(Storage.GITLET,
+            "dictionaries");
+    /** The file naming the dictionary used for new objects. */
+    private static final File CURRENT = Utils.join(DICTIONARIES, "current");
+    /** Default compression level. */
+    static final int DEFAULT_LEVEL = 6;
+    /** Greatest size of a preset dictionary; deflate looks back no
+     * further than this. */
+    static final int DICTIONARY_SIZE = 32 << 10;
+    /** Most blobs sampled when building a dictionary. */
+    private static final int SAMPLES = 256;
+    /** Smallest contents worth compressing. */
+    private static final int MIN_SIZE = 64;
+    /** Compressed contents are kept only if no larger than this fraction
+     * of the original. */
+    private static final double MAX_RATIO = 0.9;
+    /** Size of the buffer used while compressing or inflating. */
+    private static final int BUFFER = 1 << 14;
+
+    /** Maps the checksums of the dictionaries read so far to them. */
+    private static final Map<Long, byte[]> DICTIONARY_CACHE =
+            new HashMap<>();
+
+    /** Compresses DATA, unless compression is off or would save too
+     * little to be worth it.
+     * @param data the bytes to compress.
+     * @return their length followed by the deflated bytes, or null if
+     * DATA should be stored as it is. */
+    static byte[] compress(byte[] data) {
+        int level = Config.getInt("compression.level", DEFAULT_LEVEL);
+        if (level == 0 || data.length < MIN_SIZE) {
+            return null;
+        }
+        Deflater deflater = new Deflater(Math.max(-1, Math.min(9, level)));
+        try {
+            byte[] dictionary = null;
+            if (Config.getBoolean("compression.dictionary", false)) {
+                dictionary = current();
+            }
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Delta.writeVarint(out, data.length);
+            byte[] buffer = new byte[BUFFER];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (out.size() > data.length * MAX_RATIO) {
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Inflates bytes written by compress.
+     * @param data holds the compressed bytes.
+     * @param start where in DATA they begin.
+     * @return the original bytes. */
+    static byte[] inflate(byte[] data, int start) {
+        int[] pos = {start};
+        byte[] result = new byte[(int) Delta.readVarint(data, pos)];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, pos[0], data.length - pos[0]);
+            int done = 0;
+            while (done < result.length) {
+                int n = inflater.inflate(result, done, result.length - done);
+                if (n == 0 && inflater.needsDictionary()) {
+                    inflater.setDictionary(dictionary(
+                            inflater.getAdler() & 0xffffffffL));
+                } else if (n == 0 && (inflater.finished()
+                        || inflater.needsInput())) {
+                    throw Utils.error("Corrupt compressed object.");
+                }
+                done += n;
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw Utils.error("Corrupt compressed object.");
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Builds a preset dictionary from lines that recur across a sample
+     * of the stored blobs, and makes it the dictionary used for new
+     * objects. The most common lines go last, where deflate finds them
+     * soonest. */
+    static void buildDictionary() {
+        Map<String, Integer> counts = new HashMap<>();
+        List<String> ids = Blobs.ids();
+        int step = Math.max(1, ids.size() / SAMPLES);
+        for (int i = 0; i < ids.size(); i += step) {
+            String text = new String(Blobs.read(ids.get(i)),
+                    StandardCharsets.UTF_8);
+            Set<String> seen = new HashSet<>();
+            for (String line : text.split("\n")) {
+                if (line.length() >= 4 && line.length() <= 200
+                        && seen.add(line)) {
+                    counts.merge(line, 1, Integer::sum);
+                }
+            }
+        }
+        List<String> common = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1) {
+                common.add(entry.getKey());
+            }
+        }
+        common.sort((a, b) -> Long.compare(
+                (long) counts.get(b) * b.length(),
+                (long) counts.get(a) * a.length()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        for (String line : common) {
+            byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length > DICTIONARY_SIZE) {
+                break;
+            }
+            chosen.add(bytes);
+            size += bytes.length;
+        }
+        if (chosen.isEmpty()) {
+            return;
+        }
+        for (int i = chosen.size() - 1; i >= 0; i -= 1) {
+            out.write(chosen.get(i), 0, chosen.get(i).length);
+        }
+        byte[] dictionary = out.toByteArray();
+        Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        String name = String.format("%08x", adler.getValue());
+        DICTIONARIES.mkdirs();
+        Durable.write(Utils.join(DICTIONARIES, name), dictionary);
+        Durable.write(CURRENT, name);
+    }
+
+    /** Retrieve the dictionary used for new objects.
+     * @return the dictionary, or null if none has been built. */
+    private static byte[] current() {
+        if (!CURRENT.isFile()) {
+            return null;
+        }
+        String name = Utils.readContentsAsString(CURRENT).trim();
+        return dictionary(Long.parseLong(name, 16));
+    }
+
+    /** Retrieve a dictionary by its checksum.
+     * @param adler the Adler-32 checksum of the dictionary.
+     * @return the dictionary. */
+    private static synchronized byte[] dictionary(long adler) {
+        byte[] result = DICTIONARY_CACHE.get(adler);
+        if (result == null) {
+            File file = Utils.join(DICTIONARIES,
+                    String.format("%08x", adler));
+            if (!file.isFile()) {
+                throw Utils.error("Missing compression dictionary %s.",
+                        file.getName());
+            }
+            result = Utils.readContents(file);
+            DICTIONARY_CACHE.put(adler, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,83 @@
+package gitlet;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/** Tunable settings of a repository. Each setting is read from the
+ * system property gitlet.KEY if it is set, and otherwise from the
+ * .gitlet/config properties file, falling back to a default.
+ * @author Noor Gill */
+class Config {
+
+    /** The file holding the settings of the repository. */
+    static final File CONFIG = Utils.join(Storage.GITLET, "config");
+
+    /** Settings read from the config file, loaded when first needed. */
+    private static Properties settings;
+
+    /** Drops the settings read so far, so that the config file is read
+     * again when a setting is next needed. */
+    static void forget() {
+        settings = null;
+    }
+
+    /** Retrieve the raw value of a setting.
+     * @param key the name of the setting.
+     * @return its value, or null if it is not set. */
+    static String get(String key) {
+        String value = System.getProperty("gitlet." + key);
+        if (value != null) {
+            return value.trim();
+        }
+        if (settings == null) {
+            settings = new Properties();
+            if (CONFIG.isFile()) {
+                try (InputStream in = new FileInputStream(CONFIG)) {
+                    settings.load(in);
+                } catch (IOException e) {
+                    throw Utils.error("Cannot read %s.", CONFIG);
+                }
+            }
+        }
+        value = settings.getProperty(key);
+        return value == null ? null : value.trim();
+    }
+
+    /** Retrieve a numeric setting.
+     * @param key the name of the setting.
+     * @param otherwise the default value.
+     * @return the value of the setting. */
+    static long getLong(String key, long otherwise) {
+        String value = get(key);
+        if (value == null || value.isEmpty()) {
+            return otherwise;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw Utils.error("Setting %s must be a number.", key);
+        }
+    }
+
+    /** Retrieve a numeric setting.
+     * @param key the name of the setting.
+     * @param otherwise the default value.
+     * @return the value of the setting. */
+    static int getInt(String key, int otherwise) {
+        return (int) getLong(key, otherwise);
+    }
+
+    /** Retrieve a true or false setting.
+     * @param key the name of the setting.
+     * @param otherwise the default value.
+     * @return the value of the setting. */
+    static boolean getBoolean(String key, boolean otherwise) {
+        String value = get(key);
+        if (value == null || value.isEmpty()) {
+            return otherwise;
+        }
+        return Boolean.parseBoolean(value);
+    }
+}
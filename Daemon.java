@@ -0,0 +1,280 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/** Serves gitlet commands sent by Clients over a Unix domain socket at
+ * .gitlet/daemon.sock, so that a command pays neither the start of a
+ * JVM nor the loading of the repository. Started by gitlet.Main daemon
+ * in the repository, it runs until it is stopped by a signal.
+ *
+ * The repository, the commit cache, the stat cache of the working tree
+ * and the mapped index files stay loaded between commands. Each command
+ * is run by Main as a one-shot command would be, with the standard
+ * input its client sent and with standard output and error sent back
+ * to it, and commands run one at a time.
+ * If anything under .gitlet changed since the daemon last saved, as
+ * when a command was run without it, the repository and the index
+ * files are read again first; commits and blobs never change, so the
+ * caches of those are kept.
+ *
+ * Each connection is served on a thread of its own from a pool, and
+ * each command holds the repository's Lock as a one-shot command does.
+ * @author Noor Gill */
+class Daemon {
+
+    /** The socket the daemon listens on. */
+    static final File SOCKET = Utils.join(Storage.GITLET, Client.SOCKET_NAME);
+    /** Size of the output sent in one frame. */
+    private static final int FRAME = 1 << 13;
+
+    /** The repository as left by the last command, or null if it must
+     * be read again. */
+    private static Tree repo;
+    /** The state of .gitlet when the last command finished. */
+    private static String stamp;
+
+    /** Listens on the socket, serving each connection on its own
+     * thread, until the daemon is stopped. */
+    static void serve() {
+        if (!Storage.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        if (running()) {
+            System.out.println("A gitlet daemon is already serving this "
+                    + "repository.");
+            return;
+        }
+        ExecutorService workers = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "gitlet-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ServerSocketChannel server = ServerSocketChannel.open(
+                StandardProtocolFamily.UNIX)) {
+            Files.deleteIfExists(SOCKET.toPath());
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                workers.shutdown();
+                try {
+                    workers.awaitTermination(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                SOCKET.delete();
+            }));
+            while (true) {
+                SocketChannel client = server.accept();
+                workers.execute(() -> handle(client));
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot serve on %s: %s", SOCKET,
+                    e.getMessage());
+        }
+    }
+
+    /** Checks whether another daemon is listening on the socket.
+     * @return boolean that is true if yes and false if no. */
+    private static boolean running() {
+        if (!SOCKET.exists()) {
+            return false;
+        }
+        try (SocketChannel probe = SocketChannel.open(
+                StandardProtocolFamily.UNIX)) {
+            probe.connect(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Reads a command from a client, runs it and sends back its output
+     * and exit status. A client that goes away is ignored.
+     * @param client the connection. */
+    private static void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream request = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(client)));
+            String[] args = new String[request.readInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                byte[] arg = new byte[request.readInt()];
+                request.readFully(arg);
+                args[i] = new String(arg, StandardCharsets.UTF_8);
+            }
+            byte[] input = new byte[request.readInt()];
+            request.readFully(input);
+            Frames out = new Frames(client, Client.STDOUT);
+            Frames err = new Frames(client, Client.STDERR);
+            int status = run(args, new ByteArrayInputStream(input),
+                    new PrintStream(out), new PrintStream(err));
+            out.flush();
+            err.flush();
+            send(client, Client.EXIT, new byte[0], status);
+        } catch (IOException e) {
+            return;
+        }
+    }
+
+    /** Runs one command, with standard input read from IN and standard
+     * output and error sent to OUT and ERR, reading the repository again
+     * first if it changed.
+     * @param args the command and its operands.
+     * @param in the standard input of the command, as sent by its client.
+     * @param out the standard output of the command.
+     * @param err the standard error of the command.
+     * @return the exit status: 0, or 1 if the command failed. */
+    private static synchronized int run(String[] args, InputStream in,
+                                        PrintStream out, PrintStream err) {
+        InputStream stdin = System.in;
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        System.setIn(in);
+        System.setOut(out);
+        System.setErr(err);
+        try (Lock lock = Lock.acquire(!Main.readOnly(args))) {
+            if (repo == null || !stamp().equals(stamp)) {
+                forget();
+                repo = Main.developRepo();
+            }
+            repo = Main.run(repo, !lock.exclusive(), args);
+            stamp = stamp();
+            return Main.exitStatus(args);
+        } catch (RuntimeException | Error e) {
+            System.err.print("Exception in thread \"main\" ");
+            e.printStackTrace();
+            repo = null;
+            return 1;
+        } finally {
+            out.flush();
+            err.flush();
+            System.setIn(stdin);
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+
+    /** Drops everything read from the index files of the repository,
+     * which another process may have rewritten. */
+    private static void forget() {
+        Config.forget();
+        Index.forgetShared();
+        CommitIds.forget();
+        CommitGraph.forget();
+        MessageIndex.forget();
+        Pack.forget();
+    }
+
+    /** Retrieve the size and modification time of every file directly in
+     * .gitlet and in its refs and packs directories, which change
+     * whenever another process saves the repository.
+     * @return the state, as text. */
+    private static String stamp() {
+        StringBuilder result = new StringBuilder();
+        for (File dir : new File[] {Storage.GITLET, Storage.REFS,
+            Pack.PACKS}) {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(
+                            file.toPath(), BasicFileAttributes.class);
+                    result.append(file.getPath()).append(' ')
+                            .append(attributes.size()).append(' ')
+                            .append(attributes.lastModifiedTime()
+                                    .to(TimeUnit.NANOSECONDS))
+                            .append('\n');
+                } catch (IOException e) {
+                    result.append(file.getPath()).append(" gone\n");
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    /** Sends a frame to a client.
+     * @param client the connection.
+     * @param kind the kind of frame.
+     * @param data the bytes of output, if any.
+     * @param length the number of bytes of output, or the exit status. */
+    private static void send(SocketChannel client, int kind, byte[] data,
+                             int length) throws IOException {
+        int size = kind == Client.EXIT ? 0 : length;
+        ByteBuffer frame = ByteBuffer.allocate(5 + size);
+        frame.put((byte) kind).putInt(length).put(data, 0, size).flip();
+        synchronized (client) {
+            while (frame.hasRemaining()) {
+                client.write(frame);
+            }
+        }
+    }
+
+    /** Output of a command, sent to its client in frames of one kind as
+     * it fills a buffer. */
+    private static class Frames extends OutputStream {
+        /** The connection. */
+        private final SocketChannel client;
+        /** The kind of the frames. */
+        private final int kind;
+        /** Output not yet sent. */
+        private final byte[] buffer = new byte[FRAME];
+        /** The number of bytes in the buffer. */
+        private int length;
+
+        /** Output sent to CLIENT in frames of KIND. */
+        Frames(SocketChannel client, int kind) {
+            this.client = client;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == buffer.length) {
+                flush();
+            }
+            buffer[length] = (byte) b;
+            length += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == buffer.length) {
+                    flush();
+                }
+                int n = Math.min(len, buffer.length - length);
+                System.arraycopy(b, off, buffer, length, n);
+                length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (length > 0) {
+                send(client, kind, buffer, length);
+                length = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package gitlet;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Delta encoding of one version of a file against another. A delta is
+ * the length of the base and of the target, followed by instructions
+ * that either copy a run of bytes from the base or insert new bytes, so
+ * a small edit to a large file yields a delta the size of the edit.
+ * @author Noor Gill */
+class Delta {
+
+    /** Instruction inserting the bytes that follow it. */
+    private static final int INSERT = 0;
+    /** Instruction copying a run of the base. */
+    private static final int COPY = 1;
+    /** Length of the blocks of the base that are indexed for matching. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** Encodes TARGET as a delta against BASE.
+     * @param base the base version.
+     * @param target the new version.
+     * @return the delta. */
+    static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int pow = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            pow *= PRIME;
+        }
+        int pending = 0;
+        int pos = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (pos + BLOCK <= target.length) {
+            Integer at = blocks.get(h);
+            if (at != null && Arrays.equals(base, at, at + BLOCK,
+                    target, pos, pos + BLOCK)) {
+                int start = at;
+                int from = pos;
+                while (start > 0 && from > pending
+                        && base[start - 1] == target[from - 1]) {
+                    start -= 1;
+                    from -= 1;
+                }
+                int end = at + BLOCK;
+                int to = pos + BLOCK;
+                while (end < base.length && to < target.length
+                        && base[end] == target[to]) {
+                    end += 1;
+                    to += 1;
+                }
+                insert(out, target, pending, from);
+                out.write(COPY);
+                writeVarint(out, start);
+                writeVarint(out, end - start);
+                pos = to;
+                pending = to;
+                if (pos + BLOCK <= target.length) {
+                    h = hash(target, pos);
+                }
+                continue;
+            }
+            if (pos + BLOCK < target.length) {
+                h = (h - target[pos] * pow) * PRIME + target[pos + BLOCK];
+            }
+            pos += 1;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Reconstructs a version from its base and its delta.
+     * @param base the base version.
+     * @param delta the delta of the version against BASE.
+     * @return the version. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        long baseLength = readVarint(delta, pos);
+        long length = readVarint(delta, pos);
+        if (baseLength != base.length) {
+            throw Utils.error("Delta does not match its base.");
+        }
+        byte[] result = new byte[(int) length];
+        int at = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int from = (int) readVarint(delta, pos);
+                int len = (int) readVarint(delta, pos);
+                System.arraycopy(base, from, result, at, len);
+                at += len;
+            } else {
+                int len = (int) readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, at, len);
+                pos[0] += len;
+                at += len;
+            }
+        }
+        if (at != result.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** Writes an instruction inserting TARGET[FROM .. TO - 1], if that
+     * is not empty.
+     * @param out where the instruction is written.
+     * @param target the new version.
+     * @param from the first byte inserted.
+     * @param to one past the last byte inserted. */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Retrieve the hash of the block of DATA starting at START.
+     * @param data the bytes.
+     * @param start the start of the block.
+     * @return the rolling hash of the block. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = h * PRIME + data[i];
+        }
+        return h;
+    }
+
+    /** Writes a non-negative number seven bits at a time, low bits
+     * first, with the high bit of each byte marking a continuation.
+     * @param out where the number is written.
+     * @param value the number. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Reads a number written by writeVarint.
+     * @param data the bytes.
+     * @param pos a one-element array holding the position to read at,
+     * advanced past the number.
+     * @return the number. */
+    static long readVarint(byte[] data, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            result |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package gitlet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Myers' difference algorithm over the lines of two files, in its
+ * linear-space form: the middle of a shortest edit script is found by
+ * searching from both ends at once, and the halves on either side of
+ * it are compared in turn. Lines are compared by hash (see Lines), and
+ * the lines common to the start and end of each part are matched first.
+ * @author Noor Gill */
+class Diff {
+
+    /** A run of lines that are the same in both files. */
+    static class Match {
+        /** The first line of the run in the first file. */
+        private final int first;
+        /** The first line of the run in the second file. */
+        private final int second;
+        /** The number of lines in the run. */
+        private final int length;
+
+        /** A run of LENGTH lines, starting at line FIRST of the first
+         * file and line SECOND of the second. */
+        Match(int first, int second, int length) {
+            this.first = first;
+            this.second = second;
+            this.length = length;
+        }
+
+        /** Retrieve the first line of the run in the first file.
+         * @return the line number. */
+        int first() {
+            return first;
+        }
+
+        /** Retrieve the first line of the run in the second file.
+         * @return the line number. */
+        int second() {
+            return second;
+        }
+
+        /** Retrieve the number of lines in the run.
+         * @return the length. */
+        int length() {
+            return length;
+        }
+    }
+
+    /** The hashes of the lines of the first file. */
+    private final long[] a;
+    /** The hashes of the lines of the second file. */
+    private final long[] b;
+    /** The runs found so far, in order. */
+    private final List<Match> result = new ArrayList<>();
+
+    /** A comparison of lines A with lines B. */
+    private Diff(long[] a, long[] b) {
+        this.a = a;
+        this.b = b;
+    }
+
+    /** Finds the longest common subsequence of two files' lines.
+     * @param first the lines of the first file.
+     * @param second the lines of the second file.
+     * @return the runs of common lines, in order, each as long as it
+     * can be. */
+    static List<Match> matches(Lines first, Lines second) {
+        Diff diff = new Diff(first.hashes(), second.hashes());
+        diff.compare(0, diff.a.length, 0, diff.b.length);
+        return diff.result;
+    }
+
+    /** Compares A[ALO .. AHI - 1] with B[BLO .. BHI - 1], adding the
+     * runs of common lines found.
+     * @param aLo the first line of A.
+     * @param aHi one past the last line of A.
+     * @param bLo the first line of B.
+     * @param bHi one past the last line of B. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        int start = 0;
+        while (aLo + start < aHi && bLo + start < bHi
+                && a[aLo + start] == b[bLo + start]) {
+            start += 1;
+        }
+        add(aLo, bLo, start);
+        aLo += start;
+        bLo += start;
+        int end = 0;
+        while (aHi - end > aLo && bHi - end > bLo
+                && a[aHi - end - 1] == b[bHi - end - 1]) {
+            end += 1;
+        }
+        aHi -= end;
+        bHi -= end;
+        if (aLo < aHi && bLo < bHi) {
+            bisect(aLo, aHi, bLo, bHi);
+        }
+        add(aHi, bHi, end);
+    }
+
+    /** Finds where a shortest edit script of A[ALO .. AHI - 1] into
+     * B[BLO .. BHI - 1] crosses its middle diagonal, and compares the
+     * parts before and after that point. Neither part may be empty.
+     * @param aLo the first line of A.
+     * @param aHi one past the last line of A.
+     * @param bLo the first line of B.
+     * @param bHi one past the last line of B. */
+    private void bisect(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int[] forward = new int[2 * maxD + 2];
+        int[] backward = new int[2 * maxD + 2];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean front = (delta & 1) != 0;
+        int k1start = 0;
+        int k1end = 0;
+        int k2start = 0;
+        int k2end = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int i = offset + k1;
+                int x1;
+                if (k1 == -d
+                        || (k1 != d && forward[i - 1] < forward[i + 1])) {
+                    x1 = forward[i + 1];
+                } else {
+                    x1 = forward[i - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                forward[i] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int j = offset + delta - k1;
+                    if (j >= 0 && j < forward.length && backward[j] != -1
+                            && x1 >= n - backward[j]) {
+                        split(aLo, aHi, bLo, bHi, x1, y1);
+                        return;
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int i = offset + k2;
+                int x2;
+                if (k2 == -d
+                        || (k2 != d && backward[i - 1] < backward[i + 1])) {
+                    x2 = backward[i + 1];
+                } else {
+                    x2 = backward[i - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                        && a[aHi - x2 - 1] == b[bHi - y2 - 1]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                backward[i] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int j = offset + delta - k2;
+                    if (j >= 0 && j < forward.length && forward[j] != -1) {
+                        int x1 = forward[j];
+                        int y1 = offset + x1 - j;
+                        if (x1 >= n - x2) {
+                            split(aLo, aHi, bLo, bHi, x1, y1);
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Compares the parts of A[ALO .. AHI - 1] and B[BLO .. BHI - 1]
+     * before and after the point X lines into A and Y lines into B.
+     * @param aLo the first line of A.
+     * @param aHi one past the last line of A.
+     * @param bLo the first line of B.
+     * @param bHi one past the last line of B.
+     * @param x the lines of A before the point.
+     * @param y the lines of B before the point. */
+    private void split(int aLo, int aHi, int bLo, int bHi, int x, int y) {
+        compare(aLo, aLo + x, bLo, bLo + y);
+        compare(aLo + x, aHi, bLo + y, bHi);
+    }
+
+    /** Adds a run of LENGTH common lines starting at line FIRST of A and
+     * SECOND of B, joining it to the previous run if they touch.
+     * @param first the first line in A.
+     * @param second the first line in B.
+     * @param length the number of lines. */
+    private void add(int first, int second, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (!result.isEmpty()) {
+            Match last = result.get(result.size() - 1);
+            if (last.first + last.length == first
+                    && last.second + last.length == second) {
+                result.set(result.size() - 1, new Match(last.first,
+                        last.second, last.length + length));
+                return;
+            }
+        }
+        result.add(new Match(first, second, length));
+    }
+}
@@ -0,0 +1,182 @@
+package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Crash-safe writing of the files of the repository. A file is written
+ * whole to a temporary file beside it, which is then renamed over it, so
+ * a crash leaves either its old contents or its new ones and never a
+ * torn mix of the two.
+ *
+ * The temporary file is forced to disk before it is renamed, since
+ * objects are named by their contents and an object found under its id
+ * is trusted to hold them: renaming first would let a crash leave an
+ * empty or torn file under a valid id. Only the directories renamed
+ * into or deleted from, and the files written in place, are noted; sync
+ * forces each of them once. A command syncs everything else it wrote
+ * before it moves a ref, and syncs the refs last of all, so that after
+ * a crash every ref names a commit whose objects are all on disk. With
+ * the fsync setting false, files are still replaced atomically but
+ * never forced.
+ * @author Noor Gill */
+class Durable {
+
+    /** Start of the name of a temporary file, which listings of the
+     * repository skip. */
+    static final String TEMP_PREFIX = ".tmp-";
+
+    /** The id of this process, which names its temporary files along
+     * with the thread writing them. */
+    private static final long PROCESS = ProcessHandle.current().pid();
+
+    /** Files written in place since the last sync. */
+    private static final Set<Path> FILES = new LinkedHashSet<>();
+    /** Directories whose entries changed since the last sync. */
+    private static final Set<Path> DIRECTORIES = new LinkedHashSet<>();
+
+    /** Replaces the contents of a file, as Utils.writeContents would
+     * write them, through a temporary file renamed over it.
+     * @param file the file.
+     * @param contents byte arrays and strings, written in order. */
+    static void write(File file, Object... contents) {
+        Path tmp = temp(file);
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(tmp))) {
+            for (Object obj : contents) {
+                if (obj instanceof byte[]) {
+                    out.write((byte[]) obj);
+                } else {
+                    out.write(((String) obj).getBytes(
+                            StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            tmp.toFile().delete();
+            throw Utils.error("Cannot write %s.", file);
+        }
+        replace(tmp.toFile(), file);
+    }
+
+    /** Replaces the contents of a file with a copy of another's, made
+     * through a temporary file renamed over it as for write but copied
+     * with FileChannel.transferTo, so that the bytes never pass through
+     * the Java heap.
+     * @param source the file copied.
+     * @param file the file replaced. */
+    static void copy(File source, File file) {
+        Path tmp = temp(file);
+        try {
+            Utils.copyContents(source, tmp.toFile());
+        } catch (IllegalArgumentException e) {
+            tmp.toFile().delete();
+            throw Utils.error("Cannot write %s.", file);
+        }
+        replace(tmp.toFile(), file);
+    }
+
+    /** Retrieve the temporary file beside a file that this thread writes
+     * its new contents to. The name holds the id of the process, so that
+     * commands sharing the repository's Lock never write the same one.
+     * @param file the file.
+     * @return the temporary file. */
+    static Path temp(File file) {
+        return file.toPath().toAbsolutePath().resolveSibling(
+                TEMP_PREFIX + PROCESS + "-" + Thread.currentThread().getId()
+                + "-" + file.getName());
+    }
+
+    /** Forces a file written in full to disk and renames it over
+     * another, atomically, noting the directory for the next sync.
+     * @param tmp the new contents, in the same directory as FILE.
+     * @param file the file replaced. */
+    static void replace(File tmp, File file) {
+        try {
+            if (Config.getBoolean("fsync", true)) {
+                force(tmp.toPath());
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            tmp.delete();
+            throw Utils.error("Cannot write %s.", file);
+        }
+        deleted(file);
+    }
+
+    /** Notes a file written in place, such as a log appended to, for the
+     * next sync.
+     * @param file the file. */
+    static synchronized void written(File file) {
+        FILES.add(file.toPath().toAbsolutePath());
+    }
+
+    /** Notes that the entry of a file in its directory changed, as when
+     * it is deleted, for the next sync.
+     * @param file the file. */
+    static synchronized void deleted(File file) {
+        DIRECTORIES.add(file.toPath().toAbsolutePath().getParent());
+    }
+
+    /** Forces every file written in place since the last sync to disk,
+     * several at a time on the WorkingTree pool, and then each directory
+     * whose entries changed. */
+    static void sync() {
+        List<Path> files;
+        List<Path> directories;
+        synchronized (Durable.class) {
+            files = new ArrayList<>(FILES);
+            directories = new ArrayList<>(DIRECTORIES);
+            FILES.clear();
+            DIRECTORIES.clear();
+        }
+        if (!Config.getBoolean("fsync", true)) {
+            return;
+        }
+        WorkingTree.pool().submit(() -> files.parallelStream()
+                .forEach(Durable::forceFile)).join();
+        for (Path dir : directories) {
+            try (FileChannel channel = FileChannel.open(dir,
+                    StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                continue;
+            }
+        }
+    }
+
+    /** Forces the contents of a file written in place to disk. A file
+     * deleted since it was written is skipped.
+     * @param file the file. */
+    private static void forceFile(Path file) {
+        try {
+            force(file);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            throw Utils.error("Cannot sync %s.", file);
+        }
+    }
+
+    /** Forces the contents of a file to disk.
+     * @param file the file.
+     * @throws IOException if it cannot be opened or forced. */
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** Garbage collection: deletes the commits, blobs and manifests that no
+ * branch can reach, such as those left behind by reset or rm-branch.
+ *
+ * Everything reachable is marked first: each branch head and the commit
+ * of the staging area, every ancestor of those through both parents of
+ * a merge, the manifests and blobs of each of those commits (the files
+ * map, for a commit saved before manifests), and the base of every blob
+ * or manifest stored as a delta. Commits saved within the grace period
+ * are marked too, with everything they reach, so a commit is never kept
+ * without its history. The rest is swept: unmarked commits, unmarked
+ * loose objects older than the grace period, and unmarked objects of
+ * packs written before it, each such pack being rewritten without them.
+ * The files indexing the commits are then rebuilt, or if no commit was
+ * deleted, the log of commit ids is merged into its sorted file.
+ *
+ * The grace period is gc.grace seconds, two weeks by default, or the
+ * value of --grace; --dry-run reports what would be deleted and the
+ * bytes it would reclaim without deleting anything.
+ * @author Noor Gill */
+class GarbageCollector {
+
+    /** Default grace period, in seconds. */
+    static final long DEFAULT_GRACE = 14L * 24 * 60 * 60;
+
+    /** Whether only to report what would be deleted. */
+    private boolean dryRun;
+    /** The grace period in seconds. */
+    private long grace = Config.getLong("gc.grace", DEFAULT_GRACE);
+
+    /** Reads the options of gc: --dry-run, and --grace SECONDS or
+     * --grace=SECONDS.
+     * @param args the command and its options.
+     * @throws ArrayIndexOutOfBoundsException if an option is unknown,
+     * lacks its value or has one that cannot be read. */
+    private GarbageCollector(String... args) {
+        for (int i = 1; i < args.length; i += 1) {
+            String name = args[i];
+            int equals = name.indexOf('=');
+            String value = null;
+            if (equals >= 0) {
+                value = name.substring(equals + 1);
+                name = name.substring(0, equals);
+            }
+            if (name.equals("--dry-run") && value == null) {
+                dryRun = true;
+            } else if (name.equals("--grace")) {
+                if (value == null) {
+                    i += 1;
+                    value = args[i];
+                }
+                try {
+                    grace = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    throw new ArrayIndexOutOfBoundsException();
+                }
+            } else {
+                throw new ArrayIndexOutOfBoundsException();
+            }
+        }
+    }
+
+    /** Deletes, or on a dry run reports, everything unreachable from
+     * the given commits that is older than the grace period.
+     * @param heads the branch heads and the commit of the staging area.
+     * @param args the command and its options. */
+    static void collect(Collection<Commit> heads, String... args) {
+        new GarbageCollector(args).collect(heads);
+    }
+
+    /** Marks and sweeps.
+     * @param heads the branch heads and the commit of the staging area. */
+    private void collect(Collection<Commit> heads) {
+        long cutoff = System.currentTimeMillis() - grace * 1000;
+        Deque<Commit> roots = new ArrayDeque<>(heads);
+        for (String id : Storage.commitIds()) {
+            if (Storage.commitPath(id).lastModified() >= cutoff) {
+                roots.add(CommitCache.shared().get(id));
+            }
+        }
+        Set<String> commits = new HashSet<>();
+        Set<String> objects = new HashSet<>();
+        mark(roots, commits, objects);
+
+        int commitsDropped = 0;
+        long bytes = 0;
+        for (String id : Storage.commitIds()) {
+            if (!commits.contains(id)) {
+                commitsDropped += 1;
+                bytes += Storage.commitSize(id);
+                if (!dryRun) {
+                    Storage.removeCommit(id);
+                }
+            }
+        }
+        int objectsDropped = 0;
+        for (File file : Blobs.looseFiles()) {
+            if (!objects.contains(Blobs.looseId(file))
+                    && file.lastModified() < cutoff) {
+                objectsDropped += 1;
+                bytes += file.length();
+                if (!dryRun) {
+                    file.delete();
+                    file.getParentFile().delete();
+                    Durable.deleted(file);
+                    Durable.deleted(file.getParentFile());
+                }
+            }
+        }
+        Map<String, Long> packed = Pack.prune((id, time) ->
+                objects.contains(id) || time >= cutoff, dryRun);
+        objectsDropped += packed.size();
+        for (long size : packed.values()) {
+            bytes += size;
+        }
+        if (!dryRun && commitsDropped > 0) {
+            CommitIds.rebuild();
+            CommitGraph.rebuild();
+            MessageIndex.rebuild();
+        } else if (!dryRun) {
+            CommitIds.compact();
+        }
+        System.out.printf("%s %d commits and %d objects, %s %d bytes.%n",
+                dryRun ? "Would remove" : "Removed", commitsDropped,
+                objectsDropped, dryRun ? "reclaiming" : "reclaimed", bytes);
+    }
+
+    /** Marks every commit reachable from some roots, and every object
+     * those commits need.
+     * @param roots the commits to start from.
+     * @param commits the ids of the commits marked.
+     * @param objects the ids of the blobs and manifests marked. */
+    private static void mark(Deque<Commit> roots, Set<String> commits,
+                             Set<String> objects) {
+        while (!roots.isEmpty()) {
+            Commit commit = roots.pop();
+            if (commit == null || !commits.add(commit.getSHA())) {
+                continue;
+            }
+            commit.objects(objects);
+            for (String parent : new String[] {commit.getParentId(),
+                commit.getMergeParentId()}) {
+                if (parent != null && !commits.contains(parent)) {
+                    roots.push(CommitCache.shared().get(parent));
+                }
+            }
+        }
+        for (String id : objects.toArray(new String[0])) {
+            String base = Blobs.base(id);
+            while (base != null && objects.add(base)) {
+                base = Blobs.base(base);
+            }
+        }
+    }
+}
@@ -6,6 +6,8 @@ package gitlet;
  */
 class GitletException extends RuntimeException {
 
+    /** Version of the serialized form, which gitlet never saves. */
+    private static final long serialVersionUID = -1679980020093532642L;
 
     /** A GitletException with no message. */
     GitletException() {
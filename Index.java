@@ -0,0 +1,159 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A persistent cache of the blob id of each working file, keyed by
+ * the file's size, modification time and inode. A file is hashed again
+ * only when one of those differs from what was recorded, so checking an
+ * unchanged file costs one stat call instead of reading every byte.
+ * An entry for a file modified within the second the index is saved
+ * is saved without its blob id, as git marks such racy entries, since
+ * a later change within that second would leave its stat data the
+ * same; the file is hashed again the next time it is checked.
+ * The index may be used by several threads at once.
+ * @author Noor Gill */
+class Index implements Serializable {
+
+    /** Fixed so that changes to the methods of the class do not stop
+     * a saved index from being read. */
+    private static final long serialVersionUID = 5468803866984885573L;
+
+    /** The file holding the index. */
+    static final File INDEX = Utils.join(Storage.GITLET, "index");
+
+    /** The index shared by the whole program. */
+    private static Index shared;
+
+    /** What was recorded about one working file. */
+    private static class Entry implements Serializable {
+        /** Fixed as for the index. */
+        private static final long serialVersionUID = -4777285293759165468L;
+        /** The size of the file in bytes. */
+        private long size;
+        /** The modification time of the file, in milliseconds. */
+        private long mtime;
+        /** The inode, or other unique key, of the file. */
+        private String inode;
+        /** The SHA1 id of the contents of the file, or null if it must
+         * be hashed again. */
+        private String blob;
+    }
+
+    /** Maps each working file path to what was recorded about it. */
+    private Map<String, Entry> entries = new ConcurrentHashMap<>();
+    /** The time the index was last saved, in milliseconds. */
+    private long writtenAt;
+    /** Checker for changes since the index was loaded. */
+    private transient volatile boolean changed;
+    /** Number of files whose id came from the index. */
+    private transient AtomicLong hits = new AtomicLong();
+    /** Number of files that had to be hashed. */
+    private transient AtomicLong misses = new AtomicLong();
+
+    /** Retrieve the index shared by the whole program, reading it the
+     * first time it is needed.
+     * @return the index. */
+    static synchronized Index shared() {
+        if (shared == null) {
+            shared = INDEX.isFile()
+                    ? Utils.readObject(INDEX, Index.class) : new Index();
+            shared.hits = new AtomicLong();
+            shared.misses = new AtomicLong();
+        }
+        return shared;
+    }
+
+    /** Retrieve the blob id of a working file, hashing it only if its
+     * size, modification time or inode differ from what was recorded,
+     * or it was recorded as racy.
+     * @param file the working file.
+     * @return the SHA1 id of its contents. */
+    String hash(File file) {
+        String path = file.getPath();
+        Entry stat = stat(file);
+        Entry known = entries.get(path);
+        if (known != null && known.blob != null
+                && known.size == stat.size
+                && known.mtime == stat.mtime
+                && known.inode.equals(stat.inode)) {
+            hits.incrementAndGet();
+            return known.blob;
+        }
+        misses.incrementAndGet();
+        stat.blob = Utils.sha1(file);
+        entries.put(path, stat);
+        changed = true;
+        return stat.blob;
+    }
+
+    /** Records the blob id of a working file that was just written
+     * from that blob, so it need not be hashed again.
+     * @param file the working file.
+     * @param blob the SHA1 id of its contents. */
+    void record(File file, String blob) {
+        Entry stat = stat(file);
+        stat.blob = blob;
+        entries.put(file.getPath(), stat);
+        changed = true;
+    }
+
+    /** Forgets a working file, such as one that was deleted.
+     * @param file the working file. */
+    void forget(File file) {
+        if (entries.remove(file.getPath()) != null) {
+            changed = true;
+        }
+    }
+
+    /** Drops the shared index, so that it is read again when next
+     * needed; used when another process may have saved it. */
+    static synchronized void forgetShared() {
+        shared = null;
+    }
+
+    /** Saves the shared index if it changed, first dropping the blob id
+     * of each entry whose file was modified no earlier than the second
+     * it is saved in. */
+    static synchronized void saveShared() {
+        if (shared != null && shared.changed) {
+            shared.writtenAt = System.currentTimeMillis();
+            for (Entry entry : shared.entries.values()) {
+                if (entry.mtime / 1000 >= shared.writtenAt / 1000) {
+                    entry.blob = null;
+                }
+            }
+            Durable.write(INDEX, Utils.serialize(shared));
+            shared.changed = false;
+        }
+    }
+
+    /** Reads the stat data of a file with a single system call.
+     * @param file the file.
+     * @return an entry holding its size, modification time and inode. */
+    private static Entry stat(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            Entry result = new Entry();
+            result.size = attrs.size();
+            result.mtime = attrs.lastModifiedTime().toMillis();
+            result.inode = String.valueOf(attrs.fileKey());
+            return result;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** For syntactical purposes. */
+    @Override
+    public String toString() {
+        return String.format("index: %d files unchanged, %d hashed",
+                hits.get(), misses.get());
+    }
+}
@@ -0,0 +1,199 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** The lines of a file, held only as 64-bit hashes so that large files
+ * are compared without keeping their text in memory. A line is its
+ * bytes up to and including a newline (the last line may lack one), and
+ * two lines are taken to be equal when their hashes are. The text is
+ * read again, front to back, by a Cursor when it is written out.
+ * @author Noor Gill */
+class Lines {
+
+    /** Opens the contents of a file, each time from the start. */
+    interface Source {
+        /** Opens the contents.
+         * @return a stream of the contents.
+         * @throws IOException if they cannot be read. */
+        InputStream open() throws IOException;
+    }
+
+    /** Starting value of the FNV-1a hash. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    /** Multiplier of the FNV-1a hash. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /** Size of the buffer of each stream. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Where the contents are read from. */
+    private final Source source;
+    /** The hash of each line. */
+    private final long[] hashes;
+
+    /** The lines read from SOURCE, with the given HASHES. */
+    private Lines(Source source, long[] hashes) {
+        this.source = source;
+        this.hashes = hashes;
+    }
+
+    /** Reads the lines of SOURCE once to hash them.
+     * @param source the contents.
+     * @return the lines. */
+    static Lines read(Source source) {
+        long[] result = new long[64];
+        int count = 0;
+        try (InputStream in = new BufferedInputStream(source.open(),
+                BUFFER)) {
+            long h = FNV_BASIS;
+            boolean open = false;
+            for (int c = in.read(); c >= 0; c = in.read()) {
+                h = (h ^ c) * FNV_PRIME;
+                open = true;
+                if (c == '\n') {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, 2 * count);
+                    }
+                    result[count] = h;
+                    count += 1;
+                    h = FNV_BASIS;
+                    open = false;
+                }
+            }
+            if (open) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count + 1);
+                }
+                result[count] = h;
+                count += 1;
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot read file: %s", e.getMessage());
+        }
+        return new Lines(source, Arrays.copyOf(result, count));
+    }
+
+    /** Retrieve the lines of a stored blob.
+     * @param id the SHA1 id of the blob, or null for an empty file.
+     * @return the lines. */
+    static Lines ofBlob(String id) {
+        if (id == null) {
+            return read(() -> new ByteArrayInputStream(new byte[0]));
+        }
+        return read(() -> Blobs.open(id));
+    }
+
+    /** Retrieve the lines of a file in the working tree.
+     * @param file the path of the file.
+     * @return the lines. */
+    static Lines ofFile(String file) {
+        return read(() -> new FileInputStream(file));
+    }
+
+    /** Retrieve the number of lines.
+     * @return the number of lines. */
+    int size() {
+        return hashes.length;
+    }
+
+    /** Retrieve the hash of each line.
+     * @return the hashes, which must not be changed. */
+    long[] hashes() {
+        return hashes;
+    }
+
+    /** Checks whether lines FROM .. TO - 1 are equal to lines
+     * OTHERFROM .. OTHERTO - 1 of OTHER.
+     * @param from the first line.
+     * @param to one past the last line.
+     * @param other the other lines.
+     * @param otherFrom the first line of OTHER.
+     * @param otherTo one past the last line of OTHER.
+     * @return boolean that is true if yes and false if no. */
+    boolean sameAs(int from, int to, Lines other, int otherFrom,
+                   int otherTo) {
+        return Arrays.equals(hashes, from, to, other.hashes, otherFrom,
+                otherTo);
+    }
+
+    /** Opens a cursor reading the lines from the start.
+     * @return the cursor. */
+    Cursor cursor() {
+        try {
+            return new Cursor(new BufferedInputStream(source.open(),
+                    BUFFER));
+        } catch (IOException e) {
+            throw Utils.error("Cannot read file: %s", e.getMessage());
+        }
+    }
+
+    /** Reads the text of lines front to back, copying chosen lines. */
+    static class Cursor implements AutoCloseable {
+        /** The contents. */
+        private final InputStream in;
+        /** The number of the next line. */
+        private int line;
+        /** Whether the last line copied ended in a newline. */
+        private boolean ended = true;
+
+        /** A cursor reading IN from its first line. */
+        Cursor(InputStream in) {
+            this.in = in;
+        }
+
+        /** Copies lines FROM .. TO - 1 to OUT, skipping any lines before
+         * FROM. Lines must be copied in order.
+         * @param from the first line.
+         * @param to one past the last line.
+         * @param out where the lines are written.
+         * @return whether the last line written ended in a newline, or
+         * true if none was written. */
+        boolean copy(int from, int to, OutputStream out) throws IOException {
+            return copy(from, to, -1, out);
+        }
+
+        /** Copies lines FROM .. TO - 1 to OUT as copy(FROM, TO, OUT) does,
+         * writing PREFIX before each of them.
+         * @param from the first line.
+         * @param to one past the last line.
+         * @param prefix the byte written before each line, or -1 for none.
+         * @param out where the lines are written.
+         * @return whether the last line written ended in a newline, or
+         * true if none was written. */
+        boolean copy(int from, int to, int prefix, OutputStream out)
+            throws IOException {
+            ended = true;
+            while (line < to) {
+                boolean keep = line >= from;
+                int c = in.read();
+                if (keep && c >= 0 && prefix >= 0) {
+                    out.write(prefix);
+                }
+                while (c >= 0) {
+                    if (keep) {
+                        out.write(c);
+                        ended = c == '\n';
+                    }
+                    if (c == '\n') {
+                        break;
+                    }
+                    c = in.read();
+                }
+                line += 1;
+                if (c < 0) {
+                    break;
+                }
+            }
+            return ended;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
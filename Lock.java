@@ -0,0 +1,96 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/** A lock on the repository, held on .gitlet/lock for the whole of a
+ * command. Commands that only read the repository share the lock, so
+ * any number of them run at once; a command that may write takes it
+ * alone, waiting for every other command to finish first. The lock is
+ * released when the process ends, however it ends.
+ * @author Noor Gill */
+class Lock implements AutoCloseable {
+
+    /** The file locked. */
+    static final File FILE = Utils.join(Storage.GITLET, "lock");
+
+    /** The channel holding the lock, or null if there is no repository
+     * to lock. */
+    private final FileChannel channel;
+    /** Whether the lock is held alone. */
+    private final boolean exclusive;
+    /** The lock this process holds, or null if it holds none. */
+    private static Lock held;
+
+    /** A lock held through CHANNEL, alone if EXCLUSIVE. */
+    private Lock(FileChannel channel, boolean exclusive) {
+        this.channel = channel;
+        this.exclusive = exclusive;
+    }
+
+    /** Checks whether the lock is held alone, so that the command
+     * holding it may write the repository.
+     * @return boolean that is true if yes and false if no. */
+    boolean exclusive() {
+        return exclusive;
+    }
+
+    /** Checks whether this process may write the files of the
+     * repository: it holds the lock alone, or holds no lock at all, as
+     * when the repository is being made.
+     * @return boolean that is true if yes and false if no. */
+    static synchronized boolean writable() {
+        return held == null || held.exclusive;
+    }
+
+    /** Locks the repository in the current directory, waiting until no
+     * other command holds the lock in a conflicting way. Nothing is
+     * locked if there is no repository.
+     * @param exclusive whether the command may write the repository.
+     * @return the lock, to be closed once the command is done. */
+    static Lock acquire(boolean exclusive) {
+        if (!Storage.GITLET.isDirectory()) {
+            return new Lock(null, exclusive);
+        }
+        FileChannel channel;
+        try {
+            channel = exclusive || !FILE.isFile()
+                    ? FileChannel.open(FILE.toPath(),
+                            StandardOpenOption.READ, StandardOpenOption.WRITE,
+                            StandardOpenOption.CREATE)
+                    : FileChannel.open(FILE.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw Utils.error("Cannot lock %s.", FILE);
+        }
+        Lock result = new Lock(channel, exclusive);
+        try {
+            channel.lock(0, Long.MAX_VALUE, !exclusive);
+        } catch (IOException e) {
+            result.close();
+            throw Utils.error("Cannot lock %s.", FILE);
+        }
+        synchronized (Lock.class) {
+            held = result;
+        }
+        return result;
+    }
+
+    /** Releases the lock. */
+    @Override
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        synchronized (Lock.class) {
+            if (held == this) {
+                held = null;
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw Utils.error("Cannot unlock %s.", FILE);
+        }
+    }
+}
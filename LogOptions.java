@@ -0,0 +1,92 @@
+package gitlet;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+/** The options of log and global-log: --max-count N, which stops after N
+ * commits, and --since DATE and --until DATE, which keep only commits
+ * made at or after and at or before DATE. Each is given either as
+ * --OPTION VALUE or as --OPTION=VALUE. A date is yyyy-MM-dd, meaning its
+ * start, or yyyy-MM-ddTHH:mm[:ss], in the local time zone.
+ * @author Noor Gill */
+class LogOptions {
+
+    /** The most commits to show. */
+    private int maxCount = Integer.MAX_VALUE;
+    /** The earliest time shown, in milliseconds. */
+    private long since = Long.MIN_VALUE;
+    /** The latest time shown, in milliseconds. */
+    private long until = Long.MAX_VALUE;
+
+    /** Reads the options of a command.
+     * @param args the command and its options.
+     * @return the options.
+     * @throws ArrayIndexOutOfBoundsException if an option is unknown,
+     * lacks its value or has one that cannot be read. */
+    static LogOptions parse(String... args) {
+        LogOptions result = new LogOptions();
+        for (int i = 1; i < args.length; i += 1) {
+            String name = args[i];
+            String value;
+            int equals = name.indexOf('=');
+            if (equals >= 0) {
+                value = name.substring(equals + 1);
+                name = name.substring(0, equals);
+            } else {
+                i += 1;
+                value = args[i];
+            }
+            try {
+                switch (name) {
+                case "--max-count":
+                    result.maxCount = Integer.parseInt(value);
+                    break;
+                case "--since":
+                    result.since = time(value);
+                    break;
+                case "--until":
+                    result.until = time(value);
+                    break;
+                default:
+                    throw new ArrayIndexOutOfBoundsException();
+                }
+            } catch (NumberFormatException | DateTimeParseException e) {
+                throw new ArrayIndexOutOfBoundsException();
+            }
+        }
+        return result;
+    }
+
+    /** Reads a date as a time in the local time zone.
+     * @param value the date, with or without a time of day.
+     * @return the time in milliseconds. */
+    private static long time(String value) {
+        LocalDateTime time = value.contains("T")
+                ? LocalDateTime.parse(value)
+                : LocalDate.parse(value).atStartOfDay();
+        return time.atZone(ZoneId.systemDefault()).toInstant()
+                .toEpochMilli();
+    }
+
+    /** Retrieve the most commits to show.
+     * @return the number of commits. */
+    int maxCount() {
+        return maxCount;
+    }
+
+    /** Checks whether a commit made at a time is shown.
+     * @param time the time in milliseconds.
+     * @return boolean that is true if yes and false if no. */
+    boolean shows(long time) {
+        return time >= since && time <= until;
+    }
+
+    /** Checks whether a commit made at a time is too old to be shown, so
+     * that a history listed newest first can stop there.
+     * @param time the time in milliseconds.
+     * @return boolean that is true if yes and false if no. */
+    boolean past(long time) {
+        return time < since;
+    }
+}
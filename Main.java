@@ -1,10 +1,6 @@
 package gitlet;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.IOException;
+import java.util.Set;
 
 
 /** Driver class for Gitlet, the tiny [amazing] version-control system.
@@ -15,6 +11,9 @@ public class Main {
     private static String argument2;
     /** Second portion of the command. */
     private static String argument3;
+    /** The commands that never change the repository. */
+    private static final Set<String> READ_ONLY = Set.of("log",
+            "global-log", "find", "status");
 
     /** Retrieves the initial system if there isn't one in
      * the current directory.
@@ -24,7 +23,7 @@ public class Main {
         if (!directory.exists()) {
             directory.mkdirs();
         } else {
-            System.out.println("A Gitlet version-control system "
+            Utils.fail("A Gitlet version-control system "
                     + "already exists in the current directory.");
             return null;
         }
@@ -33,15 +32,12 @@ public class Main {
 
     /** Initializes the repository with a tree data structure.
      * @return the repository. */
-    private static Tree developRepo() {
+    static Tree developRepo() {
         Tree repo = null;
-        File file1 = new File(".gitlet" + File.separator + "path");
-        if (file1.exists()) {
+        if (Storage.exists()) {
             try {
-                FileInputStream inner = new FileInputStream(file1);
-                ObjectInputStream outer = new ObjectInputStream(inner);
-                repo = (Tree) outer.readObject();
-            } catch (IOException | ClassNotFoundException e) {
+                repo = Tree.load();
+            } catch (IllegalArgumentException e) {
                 e.printStackTrace();
             }
         }
@@ -63,13 +59,81 @@ public class Main {
      *  <COMMAND> <OPERAND> ...
      *  Performs the corresponding and adequate method with the argument. */
     public static void main(String... args) {
+        if (args != null && args.length > 0 && args[0].equals("daemon")) {
+            Daemon.serve();
+            return;
+        }
+        try (Lock lock = Lock.acquire(!readOnly(args))) {
+            run(developRepo(), !lock.exclusive(), args);
+        }
+        int status = exitStatus(args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Checks whether a command only reads the repository, so that it
+     * may share the repository's Lock and need not save anything. Until
+     * the files indexing the commits are built, any command may build
+     * them, so each takes the lock alone.
+     * @param args the command and its operands.
+     * @return boolean that is true if yes and false if no. */
+    static boolean readOnly(String... args) {
+        return args != null && args.length > 0
+                && READ_ONLY.contains(args[0])
+                && CommitIds.FILE.isFile() && CommitGraph.FILE.isFile()
+                && (MessageIndex.FILE.isFile() || MessageIndex.LOG.isFile());
+    }
+
+    /** Performs a command on a loaded repository and saves what it
+     * changed, as main does; the daemon runs each command it is sent
+     * through here. The caller holds the Lock of the repository.
+     * @param repo the repository, or null if there is none.
+     * @param readOnly whether the command only reads the repository, in
+     * which case nothing is saved but the Index, a cache that is always
+     * replaced whole and so may be saved under the shared Lock.
+     * @param args the command and its operands.
+     * @return the repository after the command. */
+    static Tree run(Tree repo, boolean readOnly, String... args) {
+        // Clear any failure left over from the command run before.
+        Utils.failed();
+        repo = perform(repo, args);
+        if (!readOnly) {
+            serialization(repo);
+        } else {
+            Index.saveShared();
+        }
+        if (Config.getBoolean("cache.stats", false)) {
+            System.err.println(CommitCache.shared());
+            System.err.println(Index.shared());
+        }
+        return repo;
+    }
+
+    /** Retrieve the exit status of a command just run: 1 for a batch in
+     * which a command failed, and otherwise 0, as gitlet has always
+     * exited.
+     * @param args the command and its operands.
+     * @return the status. */
+    static int exitStatus(String... args) {
+        boolean batch = args != null && args.length > 0
+                && args[0].equals("batch");
+        return batch && Utils.failed() ? 1 : 0;
+    }
+
+    /** Performs a command on a loaded repository without saving it.
+     * @param repo the repository, or null if there is none.
+     * @param args the command and its operands.
+     * @return the repository after the command. */
+    static Tree perform(Tree repo, String... args) {
         if (args == null || args.length == 0) {
-            System.out.println("Please enter a command.");
+            Utils.fail("Please enter a command.");
         }
         String argument1 = args[0];
         int command = args.length;
+        argument2 = null;
+        argument3 = null;
         argSetUp(command, args);
-        Tree repo = developRepo();
         try {
             switch (argument1) {
             case "init":
@@ -82,19 +146,19 @@ public class Main {
                 repo.commit(argument2);
                 break;
             case "log":
-                repo.log();
+                repo.log(args);
                 break;
             case "checkout":
                 checkout(repo, args);
                 break;
             case "global-log":
-                repo.globalLog();
+                repo.globalLog(args);
                 break;
             case "rm":
                 repo.remove(argument2);
                 break;
             case "find":
-                repo.find(argument2);
+                repo.find(args);
                 break;
             case "status":
                 repo.status();
@@ -111,30 +175,40 @@ public class Main {
             case "reset":
                 repo.reset(argument2);
                 break;
+            case "diff":
+                repo.diff(args);
+                break;
+            case "repack":
+                repo.repack();
+                break;
+            case "gc":
+                repo.gc(args);
+                break;
+            case "batch":
+                repo = Batch.run(repo, args);
+                break;
             default:
-                System.out.println("No command with that name exists.");
+                Utils.fail("No command with that name exists.");
                 break;
             }
         } catch (ArrayIndexOutOfBoundsException e) {
-            System.out.println("Incorrect operands.");
+            Utils.fail("Incorrect operands.");
         } catch (NullPointerException f) {
-            System.out.println("Not in an initialized Gitlet directory.");
+            Utils.fail("Not in an initialized Gitlet directory.");
         }
-        serialization(repo);
+        return repo;
     }
 
-    /** Performs serialization in saving the files as needed.
+    /** Performs serialization in saving the files as needed; only the
+     * parts of the repository changed by the command are written.
      * @param repo the repository. */
-    private static void serialization(Tree repo) {
-        File file2 = new File(".gitlet" + File.separator + "path");
+    static void serialization(Tree repo) {
         if (repo == null) {
             return;
         } else {
             try {
-                FileOutputStream outer = new FileOutputStream(file2);
-                ObjectOutputStream inner = new ObjectOutputStream(outer);
-                inner.writeObject(repo);
-            } catch (IOException e) {
+                repo.save();
+            } catch (IllegalArgumentException e) {
                 System.out.println(e.getMessage());
             }
         }
@@ -156,7 +230,7 @@ public class Main {
                 throw new IllegalArgumentException();
             }
         } catch (IllegalArgumentException e) {
-            System.out.println("Incorrect Operands.");
+            Utils.fail("Incorrect Operands.");
         }
     }
 
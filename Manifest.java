@@ -0,0 +1,360 @@
+package gitlet;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The files of a commit as a Merkle tree: one manifest per directory,
+ * listing each file in it with the id of its blob and each directory
+ * below it with the id of that directory's manifest. A manifest is kept
+ * in the blob store (see Blobs) under the SHA1 of its text, so that a
+ * directory left alone by a commit is the very same object in the
+ * commit and its parent, and a commit stores only the manifests of the
+ * directories it changed and of those above them. Two commits are
+ * compared by walking both trees together, skipping every directory
+ * whose ids are equal.
+ *
+ * The text of a manifest has a line for each entry in order of name:
+ * f for a file or d for a directory, the id and the name, separated by
+ * single spaces. A directory with nothing in it has no manifest.
+ * @author Noor Gill */
+class Manifest {
+
+    /** The id of the manifest of an empty directory, which is never
+     * stored. */
+    static final String EMPTY = Utils.sha1("");
+    /** Kind of an entry for a file. */
+    private static final char FILE = 'f';
+    /** Kind of an entry for a directory. */
+    private static final char DIRECTORY = 'd';
+    /** Default number of manifests held in the cache. */
+    static final int DEFAULT_CACHE = 4096;
+
+    /** Recently read manifests by id, least recently used first. */
+    private static final LinkedHashMap<String, Manifest> CACHE =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** One file whose blob differs between two commits. */
+    static class Change {
+        /** The path of the file. */
+        private final String path;
+        /** Its blob in the first commit, or null if it has none. */
+        private final String before;
+        /** Its blob in the second commit, or null if it has none. */
+        private final String after;
+
+        /** The file at PATH, with blob BEFORE in the first commit and
+         * AFTER in the second, either of which may be null. */
+        Change(String path, String before, String after) {
+            this.path = path;
+            this.before = before;
+            this.after = after;
+        }
+
+        /** Retrieve the path of the file.
+         * @return the path. */
+        String path() {
+            return path;
+        }
+
+        /** Retrieve the blob of the file in the first commit.
+         * @return the blob id, or null. */
+        String before() {
+            return before;
+        }
+
+        /** Retrieve the blob of the file in the second commit.
+         * @return the blob id, or null. */
+        String after() {
+            return after;
+        }
+    }
+
+    /** An entry of a manifest. */
+    private static class Entry {
+        /** Whether it names a directory rather than a file. */
+        private final boolean directory;
+        /** The id of the manifest of the directory or of the file's
+         * blob. */
+        private final String id;
+
+        /** An entry for a directory, if DIRECTORY, or a file, with ID. */
+        Entry(boolean directory, String id) {
+            this.directory = directory;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry
+                    && ((Entry) other).directory == directory
+                    && ((Entry) other).id.equals(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(directory, id);
+        }
+    }
+
+    /** The entries of the directory by name. */
+    private final TreeMap<String, Entry> entries;
+
+    /** A manifest of ENTRIES. */
+    private Manifest(TreeMap<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /** Retrieve a manifest, from the cache or else the blob store.
+     * @param id the id of the manifest.
+     * @return the manifest. */
+    private static Manifest read(String id) {
+        if (id.equals(EMPTY)) {
+            return new Manifest(new TreeMap<>());
+        }
+        synchronized (CACHE) {
+            Manifest cached = CACHE.get(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        String text = new String(Blobs.read(id), StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            int name = start + 2 + Utils.UID_LENGTH + 1;
+            entries.put(text.substring(name, end), new Entry(
+                    text.charAt(start) == DIRECTORY,
+                    text.substring(start + 2, name - 1)));
+            start = end + 1;
+        }
+        Manifest result = new Manifest(entries);
+        remember(id, result);
+        return result;
+    }
+
+    /** Stores a manifest, unless it is already stored.
+     * @param entries the entries of the manifest.
+     * @param base the id of the previous version of the directory's
+     * manifest, against which it may be stored as a delta, or null.
+     * @return the id of the manifest. */
+    private static String write(TreeMap<String, Entry> entries,
+                                String base) {
+        if (entries.isEmpty()) {
+            return EMPTY;
+        }
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            text.append(value.directory ? DIRECTORY : FILE).append(' ')
+                    .append(value.id).append(' ').append(entry.getKey())
+                    .append('\n');
+        }
+        byte[] contents = text.toString().getBytes(StandardCharsets.UTF_8);
+        String id = Utils.sha1(contents);
+        Blobs.store(id, contents, EMPTY.equals(base) ? null : base);
+        remember(id, new Manifest(entries));
+        return id;
+    }
+
+    /** Keeps a manifest in the cache, evicting the least recently used
+     * beyond the manifestCache.entries limit.
+     * @param id the id of the manifest.
+     * @param manifest the manifest. */
+    private static void remember(String id, Manifest manifest) {
+        int limit = Config.getInt("manifestCache.entries", DEFAULT_CACHE);
+        synchronized (CACHE) {
+            CACHE.put(id, manifest);
+            Iterator<String> eldest = CACHE.keySet().iterator();
+            while (CACHE.size() > limit) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    /** Retrieve the blob of a file.
+     * @param root the id of the root manifest.
+     * @param path the path of the file.
+     * @return the blob id, or null if there is no such file. */
+    static String lookup(String root, String path) {
+        String[] parts = path.split("/");
+        String id = root;
+        for (int i = 0; i < parts.length; i += 1) {
+            Entry entry = read(id).entries.get(parts[i]);
+            if (entry == null || entry.directory != (i < parts.length - 1)) {
+                return null;
+            }
+            id = entry.id;
+        }
+        return id;
+    }
+
+    /** Retrieve every file of a tree.
+     * @param root the id of the root manifest.
+     * @return the path of each file mapped to its blob id. */
+    static Map<String, String> files(String root) {
+        Map<String, String> result = new TreeMap<>();
+        files(root, "", result);
+        return result;
+    }
+
+    /** Adds every file of the tree below a directory to RESULT.
+     * @param id the id of the manifest of the directory.
+     * @param prefix the path of the directory, ending in /, or empty.
+     * @param result the files by path. */
+    private static void files(String id, String prefix,
+                              Map<String, String> result) {
+        for (Map.Entry<String, Entry> entry
+                : read(id).entries.entrySet()) {
+            String path = prefix + entry.getKey();
+            if (entry.getValue().directory) {
+                files(entry.getValue().id, path + "/", result);
+            } else {
+                result.put(path, entry.getValue().id);
+            }
+        }
+    }
+
+    /** Adds the id of every manifest and blob of a tree to RESULT,
+     * skipping each directory whose manifest is already there.
+     * @param id the id of the root manifest.
+     * @param result the ids found so far. */
+    static void objects(String id, Set<String> result) {
+        if (id.equals(EMPTY) || !result.add(id)) {
+            return;
+        }
+        for (Entry entry : read(id).entries.values()) {
+            if (entry.directory) {
+                objects(entry.id, result);
+            } else {
+                result.add(entry.id);
+            }
+        }
+    }
+
+    /** Stores the tree that results from changing some files of another,
+     * writing a new manifest only for each directory that changed.
+     * @param root the id of the root manifest of the tree changed.
+     * @param changes the path of each file changed mapped to its new
+     * blob id, or to null if it is removed.
+     * @return the id of the new root manifest. */
+    static String update(String root, Map<String, String> changes) {
+        return updateDirectory(root, new TreeMap<>(changes));
+    }
+
+    /** Stores a directory changed as CHANGES describes.
+     * @param id the id of the manifest of the directory.
+     * @param changes the changes, by path within the directory.
+     * @return the id of the directory's new manifest. */
+    private static String updateDirectory(String id,
+                                          SortedMap<String, String> changes) {
+        TreeMap<String, Entry> entries = new TreeMap<>(read(id).entries);
+        Map<String, SortedMap<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash),
+                    k -> new TreeMap<>()).put(path.substring(slash + 1),
+                        change.getValue());
+            } else if (change.getValue() == null) {
+                Entry old = entries.get(path);
+                if (old != null && !old.directory) {
+                    entries.remove(path);
+                }
+            } else {
+                entries.put(path, new Entry(false, change.getValue()));
+            }
+        }
+        for (Map.Entry<String, SortedMap<String, String>> dir
+                : below.entrySet()) {
+            Entry old = entries.get(dir.getKey());
+            String sub = updateDirectory(old != null && old.directory ? old.id
+                    : EMPTY, dir.getValue());
+            if (!sub.equals(EMPTY)) {
+                entries.put(dir.getKey(), new Entry(true, sub));
+            } else if (old != null && old.directory) {
+                entries.remove(dir.getKey());
+            }
+        }
+        if (entries.equals(read(id).entries)) {
+            return id;
+        }
+        return write(entries, id);
+    }
+
+    /** Finds the files whose blobs differ between two trees, skipping
+     * each directory whose manifest is the same in both.
+     * @param first the id of the root manifest of the first tree.
+     * @param second the id of the root manifest of the second tree.
+     * @return the files changed, in order of path. */
+    static List<Change> compare(String first, String second) {
+        List<Change> result = new ArrayList<>();
+        compare(first, second, "", result);
+        result.sort(Comparator.comparing(Change::path));
+        return result;
+    }
+
+    /** Adds the files whose blobs differ between two versions of a
+     * directory to RESULT.
+     * @param first the id of the directory's manifest in the first tree.
+     * @param second the id of its manifest in the second tree.
+     * @param prefix the path of the directory, ending in /, or empty.
+     * @param result the files changed. */
+    private static void compare(String first, String second, String prefix,
+                                List<Change> result) {
+        if (first.equals(second)) {
+            return;
+        }
+        TreeMap<String, Entry> a = read(first).entries;
+        TreeMap<String, Entry> b = read(second).entries;
+        TreeSet<String> names = new TreeSet<>(a.keySet());
+        names.addAll(b.keySet());
+        for (String name : names) {
+            Entry x = a.get(name);
+            Entry y = b.get(name);
+            if (Objects.equals(x, y)) {
+                continue;
+            }
+            String path = prefix + name;
+            String dirX = x != null && x.directory ? x.id : EMPTY;
+            String dirY = y != null && y.directory ? y.id : EMPTY;
+            compare(dirX, dirY, path + "/", result);
+            String fileX = x != null && !x.directory ? x.id : null;
+            String fileY = y != null && !y.directory ? y.id : null;
+            if (!Objects.equals(fileX, fileY)) {
+                result.add(new Change(path, fileX, fileY));
+            }
+        }
+    }
+
+    /** Finds the files whose blobs differ between two sets of files, as
+     * for commits made before manifests.
+     * @param first the first files, by path.
+     * @param second the second files, by path.
+     * @return the files changed, in order of path. */
+    static List<Change> compare(Map<String, String> first,
+                                Map<String, String> second) {
+        TreeSet<String> paths = new TreeSet<>(first.keySet());
+        paths.addAll(second.keySet());
+        List<Change> result = new ArrayList<>();
+        for (String path : paths) {
+            String before = first.get(path);
+            String after = second.get(path);
+            if (!Objects.equals(before, after)) {
+                result.add(new Change(path, before, after));
+            }
+        }
+        return result;
+    }
+}
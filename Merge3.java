@@ -0,0 +1,164 @@
+package gitlet;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A line-level three-way merge of two versions of a file against the
+ * version at their split point. Each version is compared with the base
+ * (see Diff), and the lines unchanged in both are where the versions
+ * line up. Between them, a region changed on only one side takes that
+ * side's lines, one changed the same way on both sides takes either,
+ * and one changed differently is a conflict, written between markers.
+ * With the merge.conflictStyle setting at its default of diff3 the
+ * base's lines are written as well, after a ||||||| marker.
+ *
+ * The versions are held only as line hashes while they are compared,
+ * and the merged file is written by reading each of them once, front
+ * to back.
+ * @author Noor Gill */
+class Merge3 {
+
+    /** Starts the current branch's side of a conflict. */
+    static final String OURS_MARKER = "<<<<<<< HEAD\n";
+    /** Starts the split point's lines of a conflict. */
+    static final String BASE_MARKER = "||||||| base\n";
+    /** Starts the given branch's side of a conflict. */
+    static final String THEIRS_MARKER = "=======\n";
+    /** Ends a conflict. */
+    static final String END_MARKER = ">>>>>>>\n";
+
+    /** The version at the split point. */
+    private final Lines base;
+    /** The version in the current branch. */
+    private final Lines ours;
+    /** The version in the given branch. */
+    private final Lines theirs;
+
+    /** A merge of OURS and THEIRS, both descended from BASE. */
+    Merge3(Lines base, Lines ours, Lines theirs) {
+        this.base = base;
+        this.ours = ours;
+        this.theirs = theirs;
+    }
+
+    /** A stretch of lines where the versions line up: lines BASE ..
+     * BASEEND - 1 of the base, equal to lines OURS .. OURSEND - 1 of
+     * ours and lines THEIRS .. THEIRSEND - 1 of theirs. */
+    private static class Sync {
+        /** The first line of the stretch in the base. */
+        private final int base;
+        /** One past its last line in the base. */
+        private final int baseEnd;
+        /** The first line of the stretch in ours. */
+        private final int ours;
+        /** One past its last line in ours. */
+        private final int oursEnd;
+        /** The first line of the stretch in theirs. */
+        private final int theirs;
+        /** One past its last line in theirs. */
+        private final int theirsEnd;
+
+        /** A stretch of LENGTH lines starting at lines BASE, OURS and
+         * THEIRS. */
+        Sync(int base, int ours, int theirs, int length) {
+            this.base = base;
+            this.baseEnd = base + length;
+            this.ours = ours;
+            this.oursEnd = ours + length;
+            this.theirs = theirs;
+            this.theirsEnd = theirs + length;
+        }
+    }
+
+    /** Writes the merged file to OUT.
+     * @param out where the merged file is written.
+     * @return whether there were conflicts. */
+    boolean write(OutputStream out) throws IOException {
+        boolean diff3 = !"merge".equals(Config.get("merge.conflictStyle"));
+        boolean conflict = false;
+        try (Lines.Cursor b = base.cursor(); Lines.Cursor o = ours.cursor();
+             Lines.Cursor t = theirs.cursor()) {
+            int iz = 0;
+            int io = 0;
+            int it = 0;
+            for (Sync sync : syncs()) {
+                boolean oursChanged = !base.sameAs(iz, sync.base, ours, io,
+                        sync.ours);
+                boolean theirsChanged = !base.sameAs(iz, sync.base, theirs,
+                        it, sync.theirs);
+                if (!theirsChanged || ours.sameAs(io, sync.ours, theirs, it,
+                        sync.theirs)) {
+                    o.copy(io, sync.ours, out);
+                } else if (!oursChanged) {
+                    t.copy(it, sync.theirs, out);
+                } else {
+                    conflict = true;
+                    out.write(bytes(OURS_MARKER));
+                    endLine(o.copy(io, sync.ours, out), out);
+                    if (diff3) {
+                        out.write(bytes(BASE_MARKER));
+                        endLine(b.copy(iz, sync.base, out), out);
+                    }
+                    out.write(bytes(THEIRS_MARKER));
+                    endLine(t.copy(it, sync.theirs, out), out);
+                    out.write(bytes(END_MARKER));
+                }
+                o.copy(sync.ours, sync.oursEnd, out);
+                iz = sync.baseEnd;
+                io = sync.oursEnd;
+                it = sync.theirsEnd;
+            }
+        }
+        return conflict;
+    }
+
+    /** Finds where the three versions line up: the stretches of base
+     * lines matched both in ours and in theirs, ending with an empty
+     * stretch at the end of every version.
+     * @return the stretches, in order. */
+    private List<Sync> syncs() {
+        List<Diff.Match> withOurs = Diff.matches(base, ours);
+        List<Diff.Match> withTheirs = Diff.matches(base, theirs);
+        List<Sync> result = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < withOurs.size() && j < withTheirs.size()) {
+            Diff.Match a = withOurs.get(i);
+            Diff.Match b = withTheirs.get(j);
+            int start = Math.max(a.first(), b.first());
+            int end = Math.min(a.first() + a.length(),
+                    b.first() + b.length());
+            if (start < end) {
+                result.add(new Sync(start, a.second() + start - a.first(),
+                        b.second() + start - b.first(), end - start));
+            }
+            if (a.first() + a.length() < b.first() + b.length()) {
+                i += 1;
+            } else {
+                j += 1;
+            }
+        }
+        result.add(new Sync(base.size(), ours.size(), theirs.size(), 0));
+        return result;
+    }
+
+    /** Ends a side of a conflict with a newline if its last line had
+     * none, so that the next marker starts a line.
+     * @param ended whether the side already ended in a newline.
+     * @param out where the side was written. */
+    private static void endLine(boolean ended, OutputStream out)
+        throws IOException {
+        if (!ended) {
+            out.write('\n');
+        }
+    }
+
+    /** Retrieve the bytes of a marker.
+     * @param marker the marker.
+     * @return its bytes. */
+    private static byte[] bytes(String marker) {
+        return marker.getBytes(StandardCharsets.UTF_8);
+    }
+}
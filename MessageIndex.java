@@ -0,0 +1,617 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/** The messages of every commit, searchable by exact message, substring
+ * or regular expression without reading any commit. Messages are kept
+ * in .gitlet/message-index, which is memory-mapped, with a posting list
+ * for each trigram (three consecutive bytes of UTF-8) naming the
+ * messages it occurs in. A substring query is answered by intersecting
+ * the lists of its trigrams and checking only the messages left; a
+ * regular expression by doing the same for the literal text that any
+ * match must contain.
+ *
+ * Each new commit is appended to .gitlet/message-log when the
+ * repository is saved, and the log is searched by scanning it. Once it
+ * holds COMPACT_AT commits it is merged into a new index file.
+ *
+ * The index file holds a magic number, the number of messages M and of
+ * trigrams G, then M entries (a 20-byte commit id and the offset and
+ * length of its message), G trigrams in ascending order (the trigram
+ * and the offset and length of its posting list), M pairs of a message
+ * hash and its position in ascending order of hash, the posting lists
+ * of positions, and the text of the messages.
+ * @author Noor Gill */
+class MessageIndex {
+
+    /** The file holding the index. */
+    static final File FILE = Utils.join(Storage.GITLET, "message-index");
+    /** The file holding the commits made since the index was written. */
+    static final File LOG = Utils.join(Storage.GITLET, "message-log");
+    /** Marks the start of the index file. */
+    private static final int MAGIC = 0x474d5349;
+    /** Length of the header of the index file. */
+    private static final int HEADER = 12;
+    /** Length of an id as raw bytes. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** Length of the entry of one message. */
+    private static final int ENTRY = ID_BYTES + 8;
+    /** Length of the entry of one trigram. */
+    private static final int GRAM = 12;
+    /** Length of one pair of a hash and a position. */
+    private static final int HASH = 8;
+    /** The number of logged commits at which the log is merged into the
+     * index. */
+    private static final int COMPACT_AT = 1024;
+
+    /** The mapped index file, read when first needed. */
+    private static MappedByteBuffer index;
+    /** The number of messages in the index file. */
+    private static int count;
+    /** The number of trigrams in the index file. */
+    private static int grams;
+    /** The commits in the log, read when first needed. */
+    private static List<Entry> logged;
+    /** The length of the whole commits in the log when it was read. */
+    private static long logEnd;
+    /** Commits made since the log was written. */
+    private static final List<Entry> PENDING = new ArrayList<>();
+
+    /** A commit and its message. */
+    private static class Entry {
+        /** The SHA1 id of the commit. */
+        private final String id;
+        /** The message of the commit. */
+        private final String message;
+
+        /** The commit ID, with MESSAGE. */
+        Entry(String id, String message) {
+            this.id = id;
+            this.message = message;
+        }
+    }
+
+    /** Notes a newly saved commit, to be logged on save.
+     * @param id the SHA1 id of the commit.
+     * @param message its message. */
+    static synchronized void add(String id, String message) {
+        PENDING.add(new Entry(id, message));
+    }
+
+    /** Retrieve the commits with a message.
+     * @param message the whole message.
+     * @return their ids, oldest first. */
+    static synchronized List<String> exact(String message) {
+        load();
+        Set<String> result = new LinkedHashSet<>();
+        int hash = hash(message);
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index.getInt(hashes() + mid * HASH) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<Integer> found = new ArrayList<>();
+        for (int i = lo; i < count && index.getInt(hashes() + i * HASH)
+                == hash; i += 1) {
+            found.add(index.getInt(hashes() + i * HASH + 4));
+        }
+        found.sort(null);
+        for (int pos : found) {
+            if (message(pos).equals(message)) {
+                result.add(id(pos));
+            }
+        }
+        scanLogged(message::equals, result);
+        return new ArrayList<>(result);
+    }
+
+    /** Retrieve the commits whose messages contain some text.
+     * @param text the text.
+     * @return their ids, oldest first. */
+    static synchronized List<String> containing(String text) {
+        return search(message -> message.contains(text), List.of(text));
+    }
+
+    /** Retrieve the commits with a message in which a regular
+     * expression finds a match.
+     * @param pattern the regular expression.
+     * @return their ids, oldest first. */
+    static synchronized List<String> matching(Pattern pattern) {
+        return search(message -> pattern.matcher(message).find(),
+                literals(pattern.pattern()));
+    }
+
+    /** Retrieve the commits whose messages pass TEST, checking in the
+     * index only the messages that contain every trigram of LITERALS.
+     * @param test the test of a message.
+     * @param literals text that every message passing TEST contains.
+     * @return the ids of the commits, oldest first. */
+    private static List<String> search(Predicate<String> test,
+                                       List<String> literals) {
+        load();
+        Set<String> result = new LinkedHashSet<>();
+        int[] candidates = null;
+        for (String literal : literals) {
+            byte[] bytes = literal.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i + 2 < bytes.length; i += 1) {
+                int[] postings = postings(gram(bytes, i));
+                candidates = candidates == null ? postings
+                        : intersect(candidates, postings);
+            }
+        }
+        if (candidates == null) {
+            for (int pos = 0; pos < count; pos += 1) {
+                if (test.test(message(pos))) {
+                    result.add(id(pos));
+                }
+            }
+        } else {
+            for (int pos : candidates) {
+                if (test.test(message(pos))) {
+                    result.add(id(pos));
+                }
+            }
+        }
+        scanLogged(test, result);
+        return new ArrayList<>(result);
+    }
+
+    /** Adds to RESULT the logged and pending commits whose messages pass
+     * TEST.
+     * @param test the test of a message.
+     * @param result the ids found. */
+    private static void scanLogged(Predicate<String> test,
+                                   Set<String> result) {
+        for (List<Entry> entries : List.of(logged, PENDING)) {
+            for (Entry entry : entries) {
+                if (test.test(entry.message)) {
+                    result.add(entry.id);
+                }
+            }
+        }
+    }
+
+    /** Finds text that every match of a regular expression contains:
+     * the runs of plain characters outside groups, classes and
+     * quantified characters. Nothing is found if the expression has an
+     * alternative, flags, quoting or an escape other than a character
+     * class or an escaped symbol.
+     * @param regex the regular expression.
+     * @return the runs of three or more characters. */
+    static List<String> literals(String regex) {
+        List<String> result = new ArrayList<>();
+        if (regex.indexOf('|') >= 0 || regex.contains("(?")) {
+            return result;
+        }
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            switch (c) {
+            case '\\':
+                if (i + 1 == regex.length()) {
+                    return new ArrayList<>();
+                }
+                char next = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(next)) {
+                    if ("dDwWsSbB".indexOf(next) < 0) {
+                        return new ArrayList<>();
+                    }
+                    flush(run, result);
+                } else {
+                    run.append(next);
+                }
+                i += 2;
+                break;
+            case '?': case '*': case '{':
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                flush(run, result);
+                i = c == '{' ? regex.indexOf('}', i) + 1 : i + 1;
+                if (i == 0) {
+                    return new ArrayList<>();
+                }
+                break;
+            case '[':
+                flush(run, result);
+                i = skip(regex, i, '[', ']');
+                break;
+            case '(':
+                flush(run, result);
+                i = skip(regex, i, '(', ')');
+                break;
+            case '+': case '.': case '^': case '$': case ')': case ']':
+            case '}':
+                flush(run, result);
+                i += 1;
+                break;
+            default:
+                run.append(c);
+                i += 1;
+                break;
+            }
+        }
+        flush(run, result);
+        return result;
+    }
+
+    /** Adds RUN to RESULT if it is long enough to have a trigram, and
+     * empties it.
+     * @param run the run of plain characters.
+     * @param result the runs found. */
+    private static void flush(StringBuilder run, List<String> result) {
+        if (run.length() >= 3) {
+            result.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+    /** Skips a bracketed part of a regular expression, with any nested
+     * brackets and escaped characters.
+     * @param regex the regular expression.
+     * @param start the position of the opening bracket.
+     * @param open the opening bracket.
+     * @param close the closing bracket.
+     * @return the position after the closing bracket. */
+    private static int skip(String regex, int start, char open,
+                            char close) {
+        int depth = 0;
+        for (int i = start; i < regex.length(); i += 1) {
+            char c = regex.charAt(i);
+            boolean first = i == start + 1 || i == start + 2
+                    && regex.charAt(start + 1) == '^';
+            if (c == '\\') {
+                i += 1;
+            } else if (c == open) {
+                depth += 1;
+            } else if (c == close && (open != '[' || !first)) {
+                depth -= 1;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        return regex.length();
+    }
+
+    /** Retrieve the trigram starting at a byte.
+     * @param bytes the text.
+     * @param i the position of its first byte.
+     * @return the trigram. */
+    private static int gram(byte[] bytes, int i) {
+        return (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8
+                | (bytes[i + 2] & 0xff);
+    }
+
+    /** Retrieve the hash of a message.
+     * @param message the message.
+     * @return its hash. */
+    private static int hash(String message) {
+        return Arrays.hashCode(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Retrieve the posting list of a trigram.
+     * @param gram the trigram.
+     * @return the positions of the messages it occurs in, ascending. */
+    private static int[] postings(int gram) {
+        int lo = 0;
+        int hi = grams - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int at = trigrams() + mid * GRAM;
+            int found = index.getInt(at);
+            if (found < gram) {
+                lo = mid + 1;
+            } else if (found > gram) {
+                hi = mid - 1;
+            } else {
+                int[] result = new int[index.getInt(at + 8)];
+                int offset = index.getInt(at + 4);
+                for (int i = 0; i < result.length; i += 1) {
+                    result[i] = index.getInt(offset + 4 * i);
+                }
+                return result;
+            }
+        }
+        return new int[0];
+    }
+
+    /** Intersects two ascending lists of positions.
+     * @param a one list.
+     * @param b the other.
+     * @return the positions in both, ascending. */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                result[n] = a[i];
+                n += 1;
+                i += 1;
+                j += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Retrieve where the trigrams start in the index file.
+     * @return the offset. */
+    private static int trigrams() {
+        return HEADER + count * ENTRY;
+    }
+
+    /** Retrieve where the hashes start in the index file.
+     * @return the offset. */
+    private static int hashes() {
+        return trigrams() + grams * GRAM;
+    }
+
+    /** Retrieve the id of the commit at a position of the index file.
+     * @param pos the position.
+     * @return the SHA1 id. */
+    private static String id(int pos) {
+        byte[] result = new byte[ID_BYTES];
+        index.get(HEADER + pos * ENTRY, result);
+        return Utils.toHex(result);
+    }
+
+    /** Retrieve the message at a position of the index file.
+     * @param pos the position.
+     * @return the message. */
+    private static String message(int pos) {
+        int at = HEADER + pos * ENTRY + ID_BYTES;
+        byte[] result = new byte[index.getInt(at + 4)];
+        index.get(index.getInt(at), result);
+        return new String(result, StandardCharsets.UTF_8);
+    }
+
+    /** Maps the index file and reads the log, building the index from
+     * the saved commits first if neither exists. */
+    private static void load() {
+        if (logged != null) {
+            return;
+        }
+        if (!FILE.isFile() && !LOG.isFile()) {
+            PENDING.clear();
+            write(saved());
+        }
+        count = 0;
+        grams = 0;
+        if (FILE.isFile()) {
+            index = Pack.map(FILE);
+            if (index.getInt(0) != MAGIC) {
+                throw Utils.error("Corrupt %s.", FILE.getName());
+            }
+            count = index.getInt(4);
+            grams = index.getInt(8);
+        }
+        logged = readLog();
+    }
+
+    /** Reads the commits in the log. A last one that was not written in
+     * full, as by an interrupted command, is skipped; the file is left as
+     * it is, since a command that only reads may share the repository
+     * with others, and save cuts it off before appending.
+     * @return the commits, oldest first. */
+    private static List<Entry> readLog() {
+        List<Entry> result = new ArrayList<>();
+        logEnd = 0;
+        if (!LOG.isFile()) {
+            return result;
+        }
+        long whole = 0;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(
+                        LOG.toPath())))) {
+            while (true) {
+                byte[] id = new byte[ID_BYTES];
+                in.readFully(id);
+                byte[] message = new byte[in.readInt()];
+                in.readFully(message);
+                result.add(new Entry(Utils.toHex(id),
+                        new String(message, StandardCharsets.UTF_8)));
+                whole += ID_BYTES + 4 + message.length;
+            }
+        } catch (EOFException e) {
+            logEnd = whole;
+            return result;
+        } catch (IOException e) {
+            throw Utils.error("Cannot read %s.", LOG.getName());
+        }
+    }
+
+    /** Drops the mapping of the index file and the commits read from
+     * the log, so that both are read again when next needed; used when
+     * another process may have changed them. */
+    static synchronized void forget() {
+        index = null;
+        logged = null;
+    }
+
+    /** Logs the commits made since the log was written, after cutting
+     * off any commit not written in full, merging the log into a new
+     * index file once it is long enough. The index is built
+     * from every saved commit if neither file exists. */
+    static synchronized void save() {
+        if (PENDING.isEmpty()) {
+            return;
+        }
+        if (!FILE.isFile() && !LOG.isFile()) {
+            load();
+            return;
+        }
+        load();
+        if (logged.size() + PENDING.size() >= COMPACT_AT) {
+            List<Entry> all = new ArrayList<>(count + logged.size()
+                    + PENDING.size());
+            for (int pos = 0; pos < count; pos += 1) {
+                all.add(new Entry(id(pos), message(pos)));
+            }
+            all.addAll(logged);
+            all.addAll(PENDING);
+            write(all);
+        } else {
+            if (LOG.length() > logEnd) {
+                try (RandomAccessFile file = new RandomAccessFile(LOG,
+                        "rw")) {
+                    file.setLength(logEnd);
+                } catch (IOException e) {
+                    throw Utils.error("Cannot write %s.", LOG.getName());
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(LOG,
+                            true)))) {
+                for (Entry entry : PENDING) {
+                    byte[] message = entry.message.getBytes(
+                            StandardCharsets.UTF_8);
+                    out.write(Utils.fromHex(entry.id));
+                    out.writeInt(message.length);
+                    out.write(message);
+                }
+            } catch (IOException e) {
+                throw Utils.error("Cannot write %s.", LOG.getName());
+            }
+            Durable.written(LOG);
+            logged.addAll(PENDING);
+            logEnd = LOG.length();
+        }
+        PENDING.clear();
+    }
+
+    /** Rewrites the index from the saved commits alone, emptying the
+     * log, as after commits are deleted. */
+    static synchronized void rebuild() {
+        PENDING.clear();
+        write(saved());
+    }
+
+    /** Reads every saved commit.
+     * @return the commits, oldest first. */
+    private static List<Entry> saved() {
+        List<Commit> commits = new ArrayList<>();
+        for (String id : Storage.commitIds()) {
+            commits.add(CommitCache.shared().get(id));
+        }
+        commits.sort(Comparator.comparing(Commit::getTime));
+        List<Entry> result = new ArrayList<>();
+        for (Commit commit : commits) {
+            result.add(new Entry(commit.getSHA(), commit.getMessage()));
+        }
+        return result;
+    }
+
+    /** Writes a new index file holding ENTRIES, through a temporary file
+     * so that a mapping of the old one stays valid, and empties the log.
+     * A commit listed twice is kept only where it is first listed.
+     * @param entries the commits, oldest first. */
+    private static void write(List<Entry> entries) {
+        Map<String, Integer> seen = new HashMap<>();
+        List<Entry> unique = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (seen.putIfAbsent(entry.id, unique.size()) == null) {
+                unique.add(entry);
+            }
+        }
+        int m = unique.size();
+        byte[][] texts = new byte[m][];
+        TreeMap<Integer, int[]> postings = new TreeMap<>();
+        long[] hashed = new long[m];
+        int postingCount = 0;
+        for (int pos = 0; pos < m; pos += 1) {
+            texts[pos] = unique.get(pos).message.getBytes(
+                    StandardCharsets.UTF_8);
+            hashed[pos] = (long) Arrays.hashCode(texts[pos]) << 32 | pos;
+            for (int i = 0; i + 2 < texts[pos].length; i += 1) {
+                int[] list = postings.computeIfAbsent(gram(texts[pos], i),
+                    g -> new int[4]);
+                if (list[0] == 0 || list[list[0]] != pos) {
+                    if (list[0] + 1 == list.length) {
+                        list = Arrays.copyOf(list, 2 * list.length);
+                        postings.put(gram(texts[pos], i), list);
+                    }
+                    list[0] += 1;
+                    list[list[0]] = pos;
+                    postingCount += 1;
+                }
+            }
+        }
+        Arrays.sort(hashed);
+        int g = postings.size();
+        int offset = HEADER + m * ENTRY + g * GRAM + m * HASH
+                + 4 * postingCount;
+        File tmp = Durable.temp(FILE).toFile();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(m);
+            out.writeInt(g);
+            for (int pos = 0; pos < m; pos += 1) {
+                out.write(Utils.fromHex(unique.get(pos).id));
+                out.writeInt(offset);
+                out.writeInt(texts[pos].length);
+                offset += texts[pos].length;
+            }
+            int at = HEADER + m * ENTRY + g * GRAM + m * HASH;
+            for (Map.Entry<Integer, int[]> gram : postings.entrySet()) {
+                out.writeInt(gram.getKey());
+                out.writeInt(at);
+                out.writeInt(gram.getValue()[0]);
+                at += 4 * gram.getValue()[0];
+            }
+            for (long pair : hashed) {
+                out.writeInt((int) (pair >> 32));
+                out.writeInt((int) pair);
+            }
+            for (int[] list : postings.values()) {
+                for (int i = 1; i <= list[0]; i += 1) {
+                    out.writeInt(list[i]);
+                }
+            }
+            for (byte[] text : texts) {
+                out.write(text);
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot write %s.", FILE.getName());
+        }
+        Durable.replace(tmp, FILE);
+        LOG.delete();
+        Durable.deleted(LOG);
+        index = null;
+        logged = null;
+    }
+}
@@ -0,0 +1,393 @@
+package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiPredicate;
+
+/** A pack: many stored objects consolidated into one file, with an
+ * index from object id to offset. The index holds the object ids in
+ * sorted order, so an object is found by a binary search over the
+ * memory-mapped index and then read from the memory-mapped pack.
+ *
+ * A pack-ID.idx file holds a magic number, a count N, the N ids as
+ * 20-byte SHA1 values in ascending order, and then N offsets and N
+ * lengths as 8-byte values. The pack-ID.pack file holds a magic number
+ * followed by the objects, each one a kind byte and its stored bytes
+ * (see Blobs). Each file is mapped whole, so a pack holds at most
+ * 2 GiB; repack starts a new pack once that is reached.
+ * @author Noor Gill */
+class Pack {
+
+    /** The directory holding the packs. */
+    static final File PACKS = Utils.join(Storage.GITLET, "packs");
+    /** Marks the start of an index file. */
+    private static final int INDEX_MAGIC = 0x47494458;
+    /** Marks the start of a pack file. */
+    private static final int PACK_MAGIC = 0x4750414b;
+    /** Length of an id as raw bytes. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** Length of the header of an index file. */
+    private static final int INDEX_HEADER = 8;
+    /** Length of the header of a pack file. */
+    private static final int PACK_HEADER = 4;
+
+    /** The most bytes written to a single pack. */
+    private static final long MAX_PACK = Integer.MAX_VALUE;
+
+    /** The packs of the repository, read when first needed. */
+    private static List<Pack> packs;
+
+    /** The memory-mapped index. */
+    private final MappedByteBuffer index;
+    /** The memory-mapped pack. */
+    private final MappedByteBuffer data;
+    /** The number of objects in the pack. */
+    private final int count;
+    /** The pack file. */
+    private final File packFile;
+
+    /** Opens the pack whose index is IDX.
+     * @param idx the index file. */
+    private Pack(File idx) {
+        String name = idx.getName();
+        packFile = packFile(idx);
+        index = map(idx);
+        data = map(packFile);
+        if (index.getInt(0) != INDEX_MAGIC || data.getInt(0) != PACK_MAGIC) {
+            throw Utils.error("Corrupt pack %s.", name);
+        }
+        count = index.getInt(4);
+    }
+
+    /** Drops the packs read so far, so that they are listed again when
+     * next needed; used when another process may have repacked. */
+    static synchronized void forget() {
+        packs = null;
+    }
+
+    /** Retrieve every pack of the repository. An index whose pack file
+     * is missing, as one left by an interrupted command, is skipped.
+     * @return the packs. */
+    static synchronized List<Pack> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            File[] files = PACKS.listFiles();
+            if (files != null) {
+                Arrays.sort(files);
+                for (File file : files) {
+                    if (file.getName().endsWith(".idx")
+                            && packFile(file).isFile()) {
+                        packs.add(new Pack(file));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Finds a stored object in the packs.
+     * @param id the SHA1 id of the object.
+     * @return the kind byte followed by the stored bytes of the object,
+     * or null if no pack holds it. */
+    static byte[] find(String id) {
+        byte[] key = Utils.fromHex(id);
+        for (Pack pack : packs()) {
+            int i = pack.search(key);
+            if (i >= 0) {
+                return pack.entry(i);
+            }
+        }
+        return null;
+    }
+
+    /** Checks if some pack holds an object.
+     * @param id the SHA1 id of the object.
+     * @return boolean that is true if yes and false if no. */
+    static boolean contains(String id) {
+        byte[] key = Utils.fromHex(id);
+        for (Pack pack : packs()) {
+            if (pack.search(key) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Retrieve the ids of every object in every pack.
+     * @return the object ids. */
+    static List<String> ids() {
+        List<String> result = new ArrayList<>();
+        for (Pack pack : packs()) {
+            byte[] key = new byte[ID_BYTES];
+            for (int i = 0; i < pack.count; i += 1) {
+                pack.index.get(INDEX_HEADER + i * ID_BYTES, key);
+                result.add(Utils.toHex(key));
+            }
+        }
+        return result;
+    }
+
+    /** Binary-searches the index for an id.
+     * @param key the id as raw bytes.
+     * @return the position of the id, or -1 if it is absent. */
+    private int search(byte[] key) {
+        int lo = 0;
+        int hi = count - 1;
+        byte[] probe = new byte[ID_BYTES];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            index.get(INDEX_HEADER + mid * ID_BYTES, probe);
+            int cmp = Arrays.compareUnsigned(probe, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Reads the object at a position of the index.
+     * @param i the position.
+     * @return its kind byte followed by its stored bytes. */
+    private byte[] entry(int i) {
+        int offsets = INDEX_HEADER + count * ID_BYTES;
+        long offset = index.getLong(offsets + i * 8);
+        byte[] result = new byte[(int) length(i)];
+        data.get((int) offset, result);
+        return result;
+    }
+
+    /** Retrieve the stored size of the object at a position of the
+     * index.
+     * @param i the position.
+     * @return its size in bytes, with its kind byte. */
+    private long length(int i) {
+        return index.getLong(INDEX_HEADER + count * ID_BYTES + count * 8
+                + i * 8);
+    }
+
+    /** Where an object being repacked is read from: a loose file, or
+     * a position in an existing pack. */
+    private static class Source {
+        /** The loose file, or null. */
+        private File file;
+        /** The pack, or null. */
+        private Pack pack;
+        /** The position in the pack. */
+        private int pos;
+
+        /** Reads the object.
+         * @return its kind byte followed by its stored bytes. */
+        byte[] read() {
+            return file != null ? Blobs.looseEntry(file) : pack.entry(pos);
+        }
+    }
+
+    /** Consolidates every loose object and every existing pack into new
+     * packs, then deletes the loose objects and old packs. Objects are
+     * copied one at a time, so memory use does not grow with the
+     * repository.
+     * @return the number of objects packed. */
+    static int repack() {
+        TreeMap<String, Source> objects = new TreeMap<>();
+        List<Pack> old = packs();
+        for (Pack pack : old) {
+            for (int i = 0; i < pack.count; i += 1) {
+                byte[] key = new byte[ID_BYTES];
+                pack.index.get(INDEX_HEADER + i * ID_BYTES, key);
+                Source source = new Source();
+                source.pack = pack;
+                source.pos = i;
+                objects.put(Utils.toHex(key), source);
+            }
+        }
+        List<File> loose = Blobs.looseFiles();
+        for (File file : loose) {
+            Source source = new Source();
+            source.file = file;
+            objects.putIfAbsent(Blobs.looseId(file), source);
+        }
+        if (loose.isEmpty() && old.size() <= 1) {
+            return objects.size();
+        }
+        PACKS.mkdirs();
+        List<File> made = new ArrayList<>();
+        while (!objects.isEmpty()) {
+            made.addAll(writePack(objects));
+        }
+        Durable.sync();
+        for (File file : loose) {
+            file.delete();
+            file.getParentFile().delete();
+            Durable.deleted(file.getParentFile());
+        }
+        for (Pack pack : old) {
+            if (!made.contains(pack.packFile)) {
+                indexFile(pack.packFile).delete();
+                pack.packFile.delete();
+                Durable.deleted(pack.packFile);
+            }
+        }
+        packs = null;
+        return packs().stream().mapToInt(p -> p.count).sum();
+    }
+
+    /** Rewrites each pack holding objects that are not to be kept
+     * without them, deleting the old pack; a pack left with no objects
+     * is just deleted. Nothing is changed on a dry run.
+     * @param keep checks, given the id of an object and the time its
+     * pack was written in milliseconds, whether to keep the object.
+     * @param dryRun whether only to find the objects.
+     * @return the stored size of each object dropped, by id. */
+    static Map<String, Long> prune(BiPredicate<String, Long> keep,
+                                   boolean dryRun) {
+        Map<String, Long> dropped = new TreeMap<>();
+        List<Pack> old = new ArrayList<>();
+        List<File> made = new ArrayList<>();
+        for (Pack pack : packs()) {
+            long time = pack.packFile.lastModified();
+            TreeMap<String, Source> kept = new TreeMap<>();
+            for (int i = 0; i < pack.count; i += 1) {
+                byte[] key = new byte[ID_BYTES];
+                pack.index.get(INDEX_HEADER + i * ID_BYTES, key);
+                String id = Utils.toHex(key);
+                if (keep.test(id, time)) {
+                    Source source = new Source();
+                    source.pack = pack;
+                    source.pos = i;
+                    kept.put(id, source);
+                } else {
+                    dropped.put(id, pack.length(i));
+                }
+            }
+            if (kept.size() < pack.count && !dryRun) {
+                while (!kept.isEmpty()) {
+                    made.addAll(writePack(kept));
+                }
+                old.add(pack);
+            }
+        }
+        if (old.isEmpty()) {
+            return dropped;
+        }
+        Durable.sync();
+        for (Pack pack : old) {
+            if (!made.contains(pack.packFile)) {
+                indexFile(pack.packFile).delete();
+                pack.packFile.delete();
+                Durable.deleted(pack.packFile);
+            }
+        }
+        packs = null;
+        return dropped;
+    }
+
+    /** Writes one pack and its index from the first of the objects,
+     * stopping before the pack would exceed MAX_PACK bytes, and removes
+     * the objects written. Both are written to temporary files; the pack
+     * is renamed into place first and its index last, so that an index
+     * is never found without its whole pack.
+     * @param objects maps the ids of the objects left to their sources.
+     * @return the pack file and index file written. */
+    private static List<File> writePack(TreeMap<String, Source> objects) {
+        File tmp = Utils.join(PACKS, Durable.TEMP_PREFIX + "pack");
+        File tmpIdx = Utils.join(PACKS, Durable.TEMP_PREFIX + "idx");
+        List<String> ids = new ArrayList<>();
+        List<Long> lengths = new ArrayList<>();
+        try (DataOutputStream out = open(tmp)) {
+            out.writeInt(PACK_MAGIC);
+            long size = PACK_HEADER;
+            while (!objects.isEmpty()) {
+                byte[] entry = objects.firstEntry().getValue().read();
+                if (!ids.isEmpty() && size + entry.length > MAX_PACK) {
+                    break;
+                }
+                out.write(entry);
+                size += entry.length;
+                ids.add(objects.pollFirstEntry().getKey());
+                lengths.add((long) entry.length);
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot write %s.", tmp);
+        }
+        String name = "pack-" + Utils.sha1(String.join("", ids));
+        File packFile = Utils.join(PACKS, name + ".pack");
+        File idxFile = Utils.join(PACKS, name + ".idx");
+        try (DataOutputStream out = open(tmpIdx)) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(ids.size());
+            for (String id : ids) {
+                out.write(Utils.fromHex(id));
+            }
+            long offset = PACK_HEADER;
+            for (long length : lengths) {
+                out.writeLong(offset);
+                offset += length;
+            }
+            for (long length : lengths) {
+                out.writeLong(length);
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot write %s.", idxFile);
+        }
+        Durable.replace(tmp, packFile);
+        Durable.replace(tmpIdx, idxFile);
+        List<File> result = new ArrayList<>();
+        result.add(packFile);
+        result.add(idxFile);
+        return result;
+    }
+
+    /** Retrieve the pack file of an index file.
+     * @param idx the index file.
+     * @return the pack file. */
+    private static File packFile(File idx) {
+        String name = idx.getName();
+        return new File(idx.getParentFile(),
+                name.substring(0, name.length() - ".idx".length()) + ".pack");
+    }
+
+    /** Retrieve the index file of a pack file.
+     * @param pack the pack file.
+     * @return the index file. */
+    private static File indexFile(File pack) {
+        String name = pack.getName();
+        return new File(pack.getParentFile(),
+                name.substring(0, name.length() - ".pack".length()) + ".idx");
+    }
+
+    /** Opens a file for writing.
+     * @param file the file.
+     * @return a stream writing it. */
+    private static DataOutputStream open(File file) throws IOException {
+        OutputStream out = Files.newOutputStream(file.toPath());
+        return new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    /** Maps a whole file into memory.
+     * @param file the file.
+     * @return its read-only mapping. */
+    static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException e) {
+            throw Utils.error("Cannot read %s.", file);
+        }
+    }
+}
@@ -2,7 +2,6 @@ package gitlet;
 import java.io.Serializable;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Set;
 
 /** A snapshot of the staging area with the latest commit,
  * staged files to be removed,
@@ -10,9 +9,17 @@ import java.util.Set;
  * @author Noor Gill */
 class Stage implements Serializable {
 
-    /** Pointer to the latest commit.*/
-    private Commit currentCommit;
-    /** Files that are staged for commit, in an ArrayList. */
+    /** Fixed so that changes to the methods of the class do not stop
+     * a saved stage from being read. */
+    private static final long serialVersionUID = -1851840868720849939L;
+
+    /** Pointer to the latest commit, read from storage the first
+     * time it is needed.*/
+    private transient Commit currentCommit;
+    /** The SHA1 identification of the latest commit. */
+    private String currentId;
+    /** Files that are staged for commit, in an ArrayList; null until
+     * first needed, when it starts as the files of the latest commit. */
     private ArrayList<String> staged;
     /** Files that staged and clear after each commit, in an ArrayList. */
     private ArrayList<String> stagedToClear;
@@ -22,11 +29,23 @@ class Stage implements Serializable {
     /** Retrieves the latest commit.
      * @return the current commit. */
     Commit getCurrentCommit() {
+        if (currentCommit == null) {
+            currentCommit = CommitCache.shared().get(currentId);
+        }
         return currentCommit;
     }
+    /** Retrieves the SHA1 id of the latest commit.
+     * @return the id of the current commit. */
+    String getCurrentId() {
+        return currentId;
+    }
     /** Retrieves the staged files.
      * @return the files that have been staged, in an arraylist. */
     ArrayList<String> getStaged() {
+        if (staged == null) {
+            staged = new ArrayList<>(getCurrentCommit()
+                    .getFileUpdatedToStage());
+        }
         return staged;
     }
     /** Retrieves the files that are staged and cleared after each commit.
@@ -45,12 +64,9 @@ class Stage implements Serializable {
      * @param latestCommit the most recent commit. */
     Stage(Commit latestCommit) {
         currentCommit = latestCommit;
-        stagedToClear = new ArrayList<>(); staged = new ArrayList<>();
+        currentId = latestCommit.getSHA();
+        stagedToClear = new ArrayList<>();
         forRemoval = new ArrayList<>();
-        Set<String> addedFiles = latestCommit.getFileUpdatedToStage();
-        if (addedFiles != null) {
-            staged.addAll(addedFiles);
-        }
     }
 
     /** If a file exists and it has changed,
@@ -60,19 +76,19 @@ class Stage implements Serializable {
     void add(String file) {
         File toAdd = new File(file);
         if (!toAdd.exists()) {
-            System.out.println("File does not exist.");
+            Utils.fail("File does not exist.");
         }
         String saved = null;
-        String currentSHA = Utils.sha1(Utils.readContentsAsString(toAdd));
-        if (currentCommit.contains(file)) {
-            saved = currentCommit.getFileMapped().get(file);
+        String currentSHA = Index.shared().hash(toAdd);
+        if (getCurrentCommit().contains(file)) {
+            saved = getCurrentCommit().blob(file);
         }
         if (!currentSHA.equals(saved)) {
-            staged.add(file);
+            getStaged().add(file);
             stagedToClear.add(file);
         } else {
-            if (staged.contains(file)) {
-                staged.remove(file);
+            if (getStaged().contains(file)) {
+                getStaged().remove(file);
             }
         }
         if (forRemoval.contains(file)) {
@@ -83,22 +99,22 @@ class Stage implements Serializable {
     /** Removes a file from the staging area.
      * @param file the file. */
     public void remove(String file) {
-        if (staged.contains(file)) {
-            if (currentCommit.contains(file)) {
+        if (getStaged().contains(file)) {
+            if (getCurrentCommit().contains(file)) {
                 forRemoval.add(file);
                 Utils.restrictedDelete(file);
             }
             stagedToClear.remove(file);
-            staged.remove(file);
+            getStaged().remove(file);
         } else if (stagedToClear.contains(file)) {
-            if (currentCommit.contains(file)) {
+            if (getCurrentCommit().contains(file)) {
                 forRemoval.add(file);
                 Utils.restrictedDelete(file);
             }
             stagedToClear.remove(file);
-            staged.remove(file);
+            getStaged().remove(file);
         } else {
-            System.out.println("No reason to remove the file.");
+            Utils.fail("No reason to remove the file.");
         }
     }
 
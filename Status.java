@@ -0,0 +1,82 @@
+package gitlet;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/** The state of the working tree relative to the head commit and the
+ * staging area, as found by a WorkingTree scan. Each set of file paths
+ * is kept in lexicographic order.
+ * @author Noor Gill */
+class Status {
+
+    /** Tracked files whose contents differ from the head commit and
+     * that are not staged. */
+    private final SortedSet<String> modified = new TreeSet<>();
+    /** Tracked files that are missing from the working tree and are
+     * not staged for removal. */
+    private final SortedSet<String> deleted = new TreeSet<>();
+    /** Files in the working tree that are neither tracked nor staged. */
+    private final SortedSet<String> untracked = new TreeSet<>();
+    /** Files staged for the next commit. */
+    private final SortedSet<String> staged = new TreeSet<>();
+    /** Files staged for removal. */
+    private final SortedSet<String> removed = new TreeSet<>();
+
+    /** Retrieve the modified files.
+     * @return the files changed but not staged. */
+    SortedSet<String> getModified() {
+        return Collections.unmodifiableSortedSet(modified);
+    }
+    /** Retrieve the deleted files.
+     * @return the tracked files missing from the working tree. */
+    SortedSet<String> getDeleted() {
+        return Collections.unmodifiableSortedSet(deleted);
+    }
+    /** Retrieve the untracked files.
+     * @return the files neither tracked nor staged. */
+    SortedSet<String> getUntracked() {
+        return Collections.unmodifiableSortedSet(untracked);
+    }
+    /** Retrieve the staged files.
+     * @return the files staged for the next commit. */
+    SortedSet<String> getStaged() {
+        return Collections.unmodifiableSortedSet(staged);
+    }
+    /** Retrieve the files staged for removal.
+     * @return the files to be untracked by the next commit. */
+    SortedSet<String> getRemoved() {
+        return Collections.unmodifiableSortedSet(removed);
+    }
+
+    /** Checks if anything is staged for addition or removal.
+     * @return boolean that is true if yes and false if no. */
+    boolean hasStagedChanges() {
+        return !staged.isEmpty() || !removed.isEmpty();
+    }
+
+    /** Records a modified file.
+     * @param file the file path. */
+    synchronized void addModified(String file) {
+        modified.add(file);
+    }
+    /** Records a deleted file.
+     * @param file the file path. */
+    synchronized void addDeleted(String file) {
+        deleted.add(file);
+    }
+    /** Records an untracked file.
+     * @param file the file path. */
+    synchronized void addUntracked(String file) {
+        untracked.add(file);
+    }
+    /** Records a staged file.
+     * @param file the file path. */
+    void addStaged(String file) {
+        staged.add(file);
+    }
+    /** Records a file staged for removal.
+     * @param file the file path. */
+    void addRemoved(String file) {
+        removed.add(file);
+    }
+}
@@ -0,0 +1,188 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The on-disk layout of a repository. Commits are kept as individual
+ * immutable objects, each branch head as a small ref file holding a
+ * commit id, and the current branch and staging area in files of their
+ * own, so that a command only rewrites the few pieces it changes.
+ * @author Noor Gill */
+class Storage {
+
+    /** The repository directory. */
+    static final File GITLET = new File(".gitlet");
+    /** The directory holding the serialized commits. */
+    static final File COMMITS = Utils.join(GITLET, "commits");
+    /** The directory holding one ref file per branch. */
+    static final File REFS = Utils.join(GITLET, "refs");
+    /** The file naming the current branch. */
+    static final File HEAD = Utils.join(GITLET, "HEAD");
+    /** The file holding the staging area of the current branch. */
+    static final File STAGE = Utils.join(GITLET, "stage");
+    /** Number of leading id characters naming the fan-out directory. */
+    private static final int FANOUT = 2;
+
+    /** Checks if there is a repository in the current directory.
+     * @return boolean that is true if yes and false if no. */
+    static boolean exists() {
+        return HEAD.isFile();
+    }
+
+    /** Retrieve the location of the commit with the given id.
+     * @param id the SHA1 id of the commit.
+     * @return the file holding the commit. */
+    static File commitPath(String id) {
+        return Utils.join(COMMITS, id.substring(0, FANOUT),
+                id.substring(FANOUT));
+    }
+
+    /** Checks if a commit with the given id has been saved.
+     * @param id the SHA1 id of the commit.
+     * @return boolean that is true if yes and false if no. */
+    static boolean hasCommit(String id) {
+        return id != null && id.length() == Utils.UID_LENGTH
+                && commitPath(id).isFile();
+    }
+
+    /** Retrieve a saved commit.
+     * @param id the SHA1 id of the commit.
+     * @return the commit, or null if there is none with that id. */
+    static Commit readCommit(String id) {
+        if (!hasCommit(id)) {
+            return null;
+        }
+        return Utils.readObject(commitPath(id), Commit.class);
+    }
+
+    /** Retrieve the serialized size of a saved commit.
+     * @param id the SHA1 id of the commit.
+     * @return its size in bytes. */
+    static long commitSize(String id) {
+        return commitPath(id).length();
+    }
+
+    /** Saves a commit and holds it in the commit cache. Commits never
+     * change once made, so a commit that is already saved is left alone.
+     * @param commit the commit. */
+    static void writeCommit(Commit commit) {
+        File file = commitPath(commit.getSHA());
+        if (file.isFile()) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        Durable.write(file, Utils.serialize(commit));
+        CommitCache.shared().put(commit, file.length());
+        CommitIds.add(commit.getSHA());
+        CommitGraph.add(commit.getSHA());
+        MessageIndex.add(commit.getSHA(), commit.getMessage());
+    }
+
+    /** Deletes a saved commit, and its fan-out directory if that is left
+     * empty. The files indexing the commits must be rebuilt after.
+     * @param id the SHA1 id of the commit. */
+    static void removeCommit(String id) {
+        File file = commitPath(id);
+        file.delete();
+        file.getParentFile().delete();
+        Durable.deleted(file);
+        Durable.deleted(file.getParentFile());
+    }
+
+    /** Retrieve the ids of every saved commit.
+     * @return the commit ids. */
+    static List<String> commitIds() {
+        List<String> ids = new ArrayList<>();
+        File[] dirs = COMMITS.listFiles();
+        if (dirs == null) {
+            return ids;
+        }
+        for (File dir : dirs) {
+            List<String> names = Utils.plainFilenamesIn(dir);
+            if (names != null) {
+                for (String name : names) {
+                    ids.add(dir.getName() + name);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Retrieve the ids of the saved commits in the fan-out directory
+     * that would hold an id beginning with PREFIX.
+     * @param prefix the start of an id, of at least two digits.
+     * @return the commit ids in that directory. */
+    static List<String> commitIds(String prefix) {
+        List<String> ids = new ArrayList<>();
+        String dir = prefix.substring(0, FANOUT);
+        List<String> names = Utils.plainFilenamesIn(Utils.join(COMMITS, dir));
+        if (names != null) {
+            for (String name : names) {
+                ids.add(dir + name);
+            }
+        }
+        return ids;
+    }
+
+    /** Retrieve the names of every branch.
+     * @return the branch names. */
+    static List<String> branchNames() {
+        List<String> names = Utils.plainFilenamesIn(REFS);
+        return names == null ? new ArrayList<>() : names;
+    }
+
+    /** Retrieve the head of a branch.
+     * @param branch the branch name.
+     * @return the commit id the branch points to. */
+    static String readRef(String branch) {
+        return Utils.readContentsAsString(Utils.join(REFS, branch)).trim();
+    }
+
+    /** Points a branch at a commit.
+     * @param branch the branch name.
+     * @param id the commit id. */
+    static void writeRef(String branch, String id) {
+        REFS.mkdirs();
+        Durable.write(Utils.join(REFS, branch), id + "\n");
+    }
+
+    /** Deletes a branch.
+     * @param branch the branch name. */
+    static void removeRef(String branch) {
+        File ref = Utils.join(REFS, branch);
+        ref.delete();
+        Durable.deleted(ref);
+    }
+
+    /** Retrieve the name of the current branch.
+     * @return the current branch name. */
+    static String readHead() {
+        return Utils.readContentsAsString(HEAD).trim();
+    }
+
+    /** Records the current branch.
+     * @param branch the branch name. */
+    static void writeHead(String branch) {
+        Durable.write(HEAD, branch + "\n");
+    }
+
+    /** Retrieve the saved staging area.
+     * @return the stage, or null if there is none. */
+    static Stage readStage() {
+        if (!STAGE.isFile()) {
+            return null;
+        }
+        return Utils.readObject(STAGE, Stage.class);
+    }
+
+    /** Saves the serialized staging area, deleting it if there is none.
+     * @param stage the serialized stage, or null. */
+    static void writeStage(byte[] stage) {
+        if (stage == null) {
+            STAGE.delete();
+            Durable.deleted(STAGE);
+        } else {
+            Durable.write(STAGE, stage);
+        }
+    }
+}
@@ -1,58 +1,147 @@
 package gitlet;
 
-import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /** A snapshot of the tree that is used to run
  * all commands for the version-control system.
  * @author Noor Gill */
-public class Tree implements Serializable {
+public class Tree {
+
+    /** Size of the buffer that logs are written through. */
+    private static final int LOG_BUFFER = 1 << 16;
 
     /** Pointer to the current branch. */
     private Branch currentBranch;
-    /** Maps each SHA1 identification to its commit, unique. */
-    private Map<String, Commit> commits;
-    /** Substring of SHA1, shorter and more accessible version. */
-    private HashMap<String, String> subSHA;
     /** Maps name of branch to each corresponding branch. */
     private Map<String, Branch> branchMapping;
-    /** Maps messages on commits to the SHA1 id of the commits
-     * with that particular message.*/
-    private Map<String, ArrayList<String>> convert;
     /** Checker for changes in between commits. */
     private boolean changeTrack;
     /** Boolean used for adding and removing branch functionality. */
     private boolean check;
+    /** Maps the name of each branch to the commit id of its head as
+     * last saved. */
+    private Map<String, String> savedHeads;
+    /** Name of the current branch as last saved. */
+    private String savedBranch;
+    /** The serialized staging area as last saved. */
+    private byte[] savedStage;
     /** Returns the current branch. */
     private Branch getCurrentBranch() {
         return currentBranch;
     }
     /** Constructs the tree data structure. */
     public Tree() {
-        commits = new HashMap<>(); subSHA = new HashMap<>();
-        branchMapping = new HashMap<>(); convert = new HashMap<>();
+        branchMapping = new HashMap<>();
+        savedHeads = new HashMap<>();
     }
     /** Retrieves a new version-control system within
      * the current directory with a commit, master branch, and timeStamp,
      * which is representative of the Unix Epoch, as described in the spec.
      * @return version-control system for Gitlet. */
     public static Tree init() {
-        ArrayList<String> aSHAs = new ArrayList<>();
         Tree test = new Tree();
         String branchName = "master";
         String message = "initial commit";
         Commit initial = new Commit(null, message);
-        test.commits.put(initial.getSHA(), initial);
         Branch start = new Branch(branchName, initial);
         test.currentBranch = start;
         test.branchMapping.put(branchName, start);
-        aSHAs.add(initial.getSHA());
-        test.convert.put(message, aSHAs);
+        Storage.writeCommit(initial);
         return test;
     }
+
+    /** Reads the repository in the current directory, loading only
+     * the branch heads and the staging area; every other commit is
+     * read when it is first needed.
+     * @return the repository. */
+    static Tree load() {
+        Tree repo = new Tree();
+        for (String name : Storage.branchNames()) {
+            String id = Storage.readRef(name);
+            repo.branchMapping.put(name, new Branch(name, repo.lookup(id)));
+            repo.savedHeads.put(name, id);
+        }
+        repo.savedBranch = Storage.readHead();
+        repo.currentBranch = repo.branchMapping.get(repo.savedBranch);
+        Stage stage = Storage.readStage();
+        String head = repo.savedHeads.get(repo.savedBranch);
+        if (stage != null && stage.getCurrentId().equals(head)) {
+            repo.currentBranch.setTheStage(stage);
+        }
+        repo.savedStage = Storage.STAGE.isFile()
+                ? Utils.readContents(Storage.STAGE) : null;
+        return repo;
+    }
+
+    /** Writes back only the parts of the repository that changed since
+     * it was loaded: moved, new or deleted branch heads, the current
+     * branch and the staging area. Commits are saved as soon as they
+     * are made, and the files indexing them are brought up to date.
+     * Everything else written is synced to disk before the refs are
+     * moved, and the refs are synced last (see Durable). The ref that
+     * HEAD names is never deleted. */
+    void save() {
+        for (Branch branch : branchMapping.values()) {
+            if (!branch.getRecentCommit().getSHA().equals(
+                    savedHeads.get(branch.getBranch()))) {
+                Storage.writeCommit(branch.getRecentCommit());
+            }
+        }
+        Stage stage = currentBranch.getStaging();
+        byte[] stageBytes = stage == null ? null : Utils.serialize(stage);
+        if (!Arrays.equals(stageBytes, savedStage)) {
+            Storage.writeStage(stageBytes);
+            savedStage = stageBytes;
+        }
+        CommitIds.save();
+        CommitGraph.save();
+        MessageIndex.save();
+        Index.saveShared();
+        Durable.sync();
+        for (Branch branch : branchMapping.values()) {
+            String id = branch.getRecentCommit().getSHA();
+            if (!id.equals(savedHeads.get(branch.getBranch()))) {
+                Storage.writeRef(branch.getBranch(), id);
+                savedHeads.put(branch.getBranch(), id);
+            }
+        }
+        for (String name : new ArrayList<>(savedHeads.keySet())) {
+            if (!branchMapping.containsKey(name)
+                    && !name.equals(savedBranch)
+                    && !name.equals(currentBranch.getBranch())) {
+                Storage.removeRef(name);
+                savedHeads.remove(name);
+            }
+        }
+        if (!currentBranch.getBranch().equals(savedBranch)) {
+            savedBranch = currentBranch.getBranch();
+            Storage.writeHead(savedBranch);
+        }
+        Durable.sync();
+    }
+
+    /** Retrieve a commit through the commit cache.
+     * @param id the SHA1 id of the commit.
+     * @return the commit, or null if there is none with that id. */
+    private Commit lookup(String id) {
+        return CommitCache.shared().get(id);
+    }
     /** Inserts a copy of the file into the staging area.
      * @param file the file to be staged. */
     public void add(String file) {
@@ -66,110 +155,94 @@ public class Tree implements Serializable {
     public void commit(String message) {
         assert message != null;
         if (message.length() == 0) {
-            System.out.println("Please enter a commit message.");
+            Utils.fail("Please enter a commit message.");
         }
         currentBranch.commit(message);
         Commit current = currentBranch.getRecentCommit();
-        String curSHA = current.getSHA();
-        commits.put(curSHA, current);
-        ArrayList<String> curr = convert.get(message);
-        if (curr != null) {
-            curr.add(current.getSHA());
-            convert.put(message, curr);
-            String check1SHA = current.getSHA().substring(0, 6);
-            subSHA.put(check1SHA, current.getSHA());
-        } else {
-            curr = new ArrayList<>();
-        }
+        Storage.writeCommit(current);
     }
     /** If the branch exists and it is not the current branch,
      * and the files within it have been tracked, the branch is
-     * checked out.
+     * checked out. Only the files that differ between the two heads are
+     * written or deleted; a tracked file changed since the current
+     * commit is reported, and is left in place if the branch lacks it.
      * @param branch the branch. */
     void checkout1(String branch) {
-        changeHelper();
-        if (changeTrack) {
-            return;
-        }
         if (!branchMapping.containsKey(branch)) {
-            System.out.println("No such branch exists.");
+            Utils.fail("No such branch exists.");
+            return;
         }
         if (currentBranch.getBranch().equals(branch)) {
-            System.out.println("No need to checkout the current branch.");
+            Utils.fail("No need to checkout the current branch.");
+            return;
         }
+        Commit target = branchMapping.get(branch).getRecentCommit();
         Commit lastCommit = currentBranch.getRecentCommit();
-        for (String file : lastCommit.getFileUpdatedToStage()) {
-            String savedFile = lastCommit.getFileMapped().get(file);
-            String currentFile = Utils.sha1(Utils.readContentsAsString
-                    (new File(file)));
-            if (!savedFile.equals(currentFile)) {
-                System.out.println("There is an untracked file "
+        List<Manifest.Change> changes = lastCommit.changesTo(target);
+        changeHelper(changes);
+        if (changeTrack) {
+            return;
+        }
+        List<Manifest.Change> applied = new ArrayList<>();
+        for (Manifest.Change change : changes) {
+            File file = new File(change.path());
+            if (change.before() != null && file.isFile()
+                    && !change.before().equals(Index.shared().hash(file))) {
+                Utils.fail("There is an untracked file "
                         + "in the way delete it or add it first.");
-            } else {
-                Utils.restrictedDelete(file);
+                if (change.after() == null) {
+                    continue;
+                }
             }
+            applied.add(change);
         }
         currentBranch = branchMapping.get(branch);
-        lastCommit.checkout();
+        target.checkout(applied);
     }
 
-    /** Checks if there are untracked files in the directory
-     * as well as any untracked changes. */
-    private void changeHelper() {
-        String createGit = currentBranch.getRecentCommit().getCommitDir();
-        int a = createGit.length();
-        File gitlet = new File(createGit);
-        int b = gitlet.getAbsolutePath().length();
-        String pathMake = gitlet.getAbsolutePath();
-        String path = pathMake.substring(0, b - a + 1);
-        File gitPath = new File(path);
-        File[] files = gitPath.listFiles();
-        if (files != null) {
-            System.out.println("There is an untracked file in the way "
-                    + "delete it or add it first.");
-        }
-        for (File file : files) {
-            if (file.isFile()) {
-                Stage currentStage = currentBranch.getStaging();
-                if (currentStage != null) {
-                    System.out.println("There is an untracked file in the way "
-                            + "delete it or add it first.");
-                }
-                if (!currentStage.getStagedToClear().contains(file.getName())) {
-                    Commit currentCommit = currentBranch.getRecentCommit();
-                    if (currentCommit.contains(
-                            file.getName())) {
-                        String fileSHA = Utils.sha1(
-                                Utils.readContentsAsString(file));
-                        String commitSHA = currentCommit.getFileMapped()
-                                .get(file.getName());
-                        if (commitSHA.equals(fileSHA)) {
-                            changeTrack = false;
-                        }
-                    } else {
-                        changeTrack = false;
-                    }
-                }
-                if (!currentStage.getStaged().isEmpty()) {
-                    changeTrack = false;
-                }
+    /** Scans the working tree against the current commit and the
+     * staging area.
+     * @return the modified, deleted, untracked and staged files. */
+    private Status scan() {
+        return WorkingTree.scan(currentBranch.getRecentCommit(),
+                currentBranch.getStaging());
+    }
+
+    /** Checks if there are untracked files in the directory that
+     * checking out a commit would overwrite. Only the files that differ
+     * between the current commit and the target are looked at: one in
+     * the way is present, unknown to the current commit and not staged.
+     * @param changes the changes from the current commit to the one to
+     * be checked out. */
+    private void changeHelper(List<Manifest.Change> changes) {
+        changeTrack = false;
+        Stage stage = currentBranch.getStaging();
+        for (Manifest.Change change : changes) {
+            if (change.before() == null && change.after() != null
+                    && new File(change.path()).isFile()
+                    && (stage == null || !stage.getStagedToClear()
+                        .contains(change.path()))) {
+                changeTrack = true;
             }
         }
-        changeTrack = true;
-        System.out.println("There is an untracked file in the way "
-                + "delete it or add it first.");
+        if (changeTrack) {
+            Utils.fail("There is an untracked file in the way "
+                    + "delete it or add it first.");
+        }
     }
 
     /** If the branch exists and it is not the current branch,
      * and the files within it have been tracked, the branch is
-     * checked out.
+     * checked out. Only the files that differ between the two heads are
+     * written or deleted; a tracked file changed since the current
+     * commit is reported, and is left in place if the branch lacks it.
      * @param branch the branch. */
     void checkout2(String branch) {
         Commit lastCommit = currentBranch.getRecentCommit();
         if (lastCommit.contains(branch)) {
             lastCommit.checkout(branch);
         } else {
-            System.out.println("File does not exist in that commit.");
+            Utils.fail("File does not exist in that commit.");
         }
     }
 
@@ -178,39 +251,96 @@ public class Tree implements Serializable {
      * @param id the commit id of the file.
      * @param file the name of the file. */
     void checkout3(String id, String file) {
-        if (id.length() == 6) {
-            id = subSHA.get(id);
-        }
-        if (id == null || !commits.containsKey(id)) {
-            System.out.println("No commit with that id exists.");
+        id = resolve(id);
+        if (id == null) {
+            return;
         }
-        Commit toCheckout = commits.get(id);
+        Commit toCheckout = lookup(id);
         if (toCheckout.contains(file)) {
             toCheckout.checkout(file);
         } else {
-            System.out.println("File does not exist in that commit.");
+            Utils.fail("File does not exist in that commit.");
         }
     }
 
     /** Prints information for each commit starting from current commit
      * up until first commit; the first parent's commits are followed and
-     * second parents in merges are not accounted for in display.*/
-    void log() {
+     * second parents in merges are not accounted for in display. Each
+     * commit is read and written out in turn, and the walk stops once
+     * --max-count commits are shown or they are older than --since.
+     * @param args the command and its options (see LogOptions). */
+    void log(String... args) {
+        LogOptions options = LogOptions.parse(args);
+        Writer out = logWriter();
+        int shown = 0;
         Commit now = currentBranch.getRecentCommit();
-        while (now != null) {
-            System.out.println(now.toString());
-            System.out.println();
+        while (now != null && shown < options.maxCount()
+                && !options.past(now.getTime().getTime())) {
+            if (options.shows(now.getTime().getTime())) {
+                writeEntry(now, out);
+                shown += 1;
+            }
             now = now.getParentCommit();
         }
+        flush(out);
     }
 
-    /** Same as log except includes information for
-     * all commits. */
-    void globalLog() {
-        for (String str : commits.keySet()) {
-            Commit comm = commits.get(str);
-            System.out.println(comm.toString());
-            System.out.println();
+    /** Same as log except includes information for all commits, newest
+     * first. The histories of every branch and of any commits left
+     * behind are merged in order of time through the commit graph, so
+     * the newest commits are written before the rest are read.
+     * @param args the command and its options (see LogOptions). */
+    void globalLog(String... args) {
+        LogOptions options = LogOptions.parse(args);
+        Set<String> heads = new LinkedHashSet<>();
+        for (Branch branch : branchMapping.values()) {
+            heads.add(branch.getRecentCommit().getSHA());
+        }
+        heads.addAll(CommitGraph.tips());
+        Writer out = logWriter();
+        int shown = 0;
+        Iterator<String> ids = CommitGraph.newestFirst(heads);
+        while (ids.hasNext() && shown < options.maxCount()) {
+            Commit comm = lookup(ids.next());
+            long time = comm.getTime().getTime();
+            if (options.past(time)) {
+                break;
+            }
+            if (options.shows(time)) {
+                writeEntry(comm, out);
+                shown += 1;
+            }
+        }
+        flush(out);
+    }
+
+    /** Retrieve a buffered writer to standard output for a log.
+     * @return the writer. */
+    private static Writer logWriter() {
+        return new BufferedWriter(new OutputStreamWriter(System.out),
+                LOG_BUFFER);
+    }
+
+    /** Writes the entry of a commit in a log, followed by a blank line.
+     * @param commit the commit.
+     * @param out where the entry is written. */
+    private static void writeEntry(Commit commit, Writer out) {
+        try {
+            commit.write(out);
+            out.write(System.lineSeparator());
+            out.write(System.lineSeparator());
+        } catch (IOException e) {
+            throw Utils.error("Cannot write log: %s", e.getMessage());
+        }
+    }
+
+    /** Flushes a log to standard output.
+     * @param out the log. */
+    private static void flush(Writer out) {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw Utils.error("Cannot write log: %s", e.getMessage());
         }
     }
 
@@ -226,17 +356,32 @@ public class Tree implements Serializable {
         currentBranch.removeAFile(file);
     }
 
-    /** Prints the SHA1 id of every commit with the message
-     * provided with line breaks.
-     * @param message the message given. */
-    void find(String message) {
-        if (message == null) {
+    /** Prints the SHA1 id of every commit with the message provided
+     * (find MESSAGE), with a message containing some text (find
+     * --substring TEXT) or with a message in which a regular expression
+     * finds a match (find --regex PATTERN), oldest first, with line
+     * breaks. Messages are looked up in the MessageIndex.
+     * @param args the command and its operands. */
+    void find(String... args) {
+        List<String> found;
+        if (args.length == 2) {
+            found = MessageIndex.exact(args[1]);
+        } else if (args.length == 3 && args[1].equals("--substring")) {
+            found = MessageIndex.containing(args[2]);
+        } else if (args.length == 3 && args[1].equals("--regex")) {
+            try {
+                found = MessageIndex.matching(Pattern.compile(args[2]));
+            } catch (PatternSyntaxException e) {
+                Utils.fail("Invalid regular expression.");
+                return;
+            }
+        } else {
             throw new ArrayIndexOutOfBoundsException();
         }
-        if (!convert.containsKey(message)) {
-            System.out.println("Found no commit with that message.");
+        if (found.isEmpty()) {
+            Utils.fail("Found no commit with that message.");
         }
-        for (String sHA : convert.get(message)) {
+        for (String sHA : found) {
             System.out.println(sHA);
         }
     }
@@ -255,8 +400,9 @@ public class Tree implements Serializable {
     void addBranch(String branch) {
         branchHelper(branch);
         if (check) {
-            System.out.println("A branch with "
+            Utils.fail("A branch with "
                     + "that name already exists.");
+            return;
         }
         branchMapping.put(branch, new Branch(branch,
                 currentBranch.getRecentCommit()));
@@ -267,12 +413,14 @@ public class Tree implements Serializable {
     void removeBranch(String branch) {
         branchHelper(branch);
         if (!check) {
-            System.out.println("A branch with that name does not exist.");
+            Utils.fail("A branch with that name does not exist.");
+            return;
         }
         String now = currentBranch.getBranch();
         if (branch.equals(now)) {
-            System.out.println("Cannot remove "
+            Utils.fail("Cannot remove "
                     + "the current branch.");
+            return;
         }
         branchMapping.remove(branch);
     }
@@ -297,19 +445,119 @@ public class Tree implements Serializable {
      * @param id the commit id. */
     void reset(String id) {
         assert (id != null);
-        if (!commits.containsKey(id)) {
-            System.out.println("No commit with that id exists.");
+        id = resolve(id);
+        if (id == null) {
+            return;
         }
-        Commit ids = commits.get(id);
-        changeHelper();
+        Commit ids = lookup(id);
+        List<Manifest.Change> changes =
+                currentBranch.getRecentCommit().changesTo(ids);
+        changeHelper(changes);
         if (changeTrack) {
             return;
         }
-        ids.checkout();
+        ids.checkout(changes);
         currentBranch.setRecentCommit(ids);
         currentBranch.setTheStage(null);
     }
 
+    /** Expands a full or abbreviated commit id of at least four
+     * characters, printing why if it names no commit or more than one.
+     * @param id the commit id or a prefix of it.
+     * @return the full commit id, or null. */
+    private String resolve(String id) {
+        List<String> matches = CommitIds.matching(id, 2);
+        if (matches.isEmpty()) {
+            Utils.fail("No commit with that id exists.");
+            return null;
+        }
+        if (matches.size() > 1) {
+            Utils.fail("Commit id %s is ambiguous.", id);
+            return null;
+        }
+        return matches.get(0);
+    }
+
+    /** Prints the differences, in unified format, between the current
+     * commit and the working tree (diff), between the current commit
+     * and what is staged (diff --staged), or between two commits (diff
+     * C1 C2). Files whose blob ids are the same are skipped without
+     * being read.
+     * @param args the command and its operands. */
+    void diff(String... args) {
+        Commit head = currentBranch.getRecentCommit();
+        List<UnifiedDiff.Change> changes = new ArrayList<>();
+        if (args.length == 1) {
+            Status status = scan();
+            SortedSet<String> files = new TreeSet<>(status.getModified());
+            files.addAll(status.getDeleted());
+            for (String file : files) {
+                changes.add(new UnifiedDiff.Change(file,
+                        head.blob(file), null,
+                        status.getModified().contains(file)));
+            }
+        } else if (args.length == 2 && args[1].equals("--staged")) {
+            Stage stage = currentBranch.getStaging();
+            SortedSet<String> files = new TreeSet<>();
+            if (stage != null) {
+                files.addAll(stage.getStagedToClear());
+                files.addAll(stage.getForRemoval());
+            }
+            for (String file : files) {
+                String old = head.blob(file);
+                if (stage.getForRemoval().contains(file)) {
+                    changes.add(new UnifiedDiff.Change(file, old, null,
+                            false));
+                } else if (new File(file).isFile()
+                        && !Index.shared().hash(new File(file))
+                        .equals(old)) {
+                    changes.add(new UnifiedDiff.Change(file, old, null,
+                            true));
+                }
+            }
+        } else if (args.length == 3) {
+            String first = resolve(args[1]);
+            String second = first == null ? null : resolve(args[2]);
+            if (second == null) {
+                return;
+            }
+            for (Manifest.Change change
+                    : lookup(first).changesTo(lookup(second))) {
+                changes.add(new UnifiedDiff.Change(change.path(),
+                        change.before(), change.after(), false));
+            }
+        } else {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        UnifiedDiff.write(changes, System.out);
+    }
+
+    /** Consolidates the loose blobs into a single pack, first building
+     * a compression dictionary from them if that is enabled, and merges
+     * the log of commit ids into the sorted file (see CommitIds). */
+    void repack() {
+        if (Config.getBoolean("compression.dictionary", false)) {
+            Compression.buildDictionary();
+        }
+        Pack.repack();
+        CommitIds.compact();
+    }
+
+    /** Deletes the commits and stored objects that no branch reaches
+     * (see GarbageCollector).
+     * @param args the command and its options. */
+    void gc(String... args) {
+        List<Commit> heads = new ArrayList<>();
+        for (Branch branch : branchMapping.values()) {
+            heads.add(branch.getRecentCommit());
+            Stage stage = branch.getStaging();
+            if (stage != null) {
+                heads.add(lookup(stage.getCurrentId()));
+            }
+        }
+        GarbageCollector.collect(heads, args);
+    }
+
     /** Merge a branch with the current branch.
      * @param branch the branch to be merged with. */
     public void merge(String branch) {
@@ -317,16 +565,22 @@ public class Tree implements Serializable {
             throw new ArrayIndexOutOfBoundsException();
         }
         if (!branchMapping.containsKey(branch)) {
-            System.out.println("A branch with that name does not exist.");
+            Utils.fail("A branch with that name does not exist.");
         }
         if (branch.equals(currentBranch.getBranch())) {
-            System.out.println("Cannot merge a branch with itself.");
+            Utils.fail("Cannot merge a branch with itself.");
         }
-        changeHelper();
+        if (scan().hasStagedChanges()) {
+            Utils.fail("You have uncommitted changes.");
+            return;
+        }
+        Branch given = branchMapping.get(branch);
+        changeHelper(currentBranch.getRecentCommit()
+                .changesTo(given.getRecentCommit()));
         if (changeTrack) {
             return;
         }
-        currentBranch.merge(branchMapping.get(branch));
+        currentBranch.merge(given);
     }
     /** For syntactical purposes. */
     @Override
@@ -346,8 +600,18 @@ public class Tree implements Serializable {
         } else {
             myString.append(getCurrentBranch().getStaging().toString() + "\n");
         }
-        myString.append("=== Modifications Not Staged For Commit === \n"
-                + "\n" + "=== Untracked Files === \n");
+        Status status = scan();
+        myString.append("=== Modifications Not Staged For Commit === \n");
+        for (String file : status.getModified()) {
+            myString.append(file + " (modified)\n");
+        }
+        for (String file : status.getDeleted()) {
+            myString.append(file + " (deleted)\n");
+        }
+        myString.append("\n" + "=== Untracked Files === \n");
+        for (String file : status.getUntracked()) {
+            myString.append(file + "\n");
+        }
         return myString.toString();
     }
 }
@@ -0,0 +1,212 @@
+package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/** Writes the differences between two versions of a set of files in
+ * unified format, with three lines of context around each change. The
+ * files are compared (see Diff) in parallel on the WorkingTree pool, a
+ * bounded number ahead of the one being written, and the output is
+ * streamed in order of path through a buffer, each version's text being
+ * read once, front to back, as its hunks are written.
+ * @author Noor Gill */
+class UnifiedDiff {
+
+    /** The number of unchanged lines shown around each change. */
+    private static final int CONTEXT = 3;
+    /** Size of the output buffer. */
+    private static final int BUFFER = 1 << 16;
+    /** Written after a last line that lacks a newline. */
+    private static final String NO_NEWLINE = "\\ No newline at end of file\n";
+
+    /** One file whose versions differ. */
+    static class Change {
+        /** The path of the file. */
+        private final String path;
+        /** The blob id of the old version, or null if there is none. */
+        private final String oldBlob;
+        /** The blob id of the new version, or null if there is none. */
+        private final String newBlob;
+        /** Whether the new version is read from the working tree. */
+        private final boolean working;
+
+        /** A change of the file at PATH from blob OLDBLOB to blob NEWBLOB,
+         * either of which may be null for a missing version. If WORKING,
+         * the new version is read from the working tree. */
+        Change(String path, String oldBlob, String newBlob,
+               boolean working) {
+            this.path = path;
+            this.oldBlob = oldBlob;
+            this.newBlob = newBlob;
+            this.working = working;
+        }
+
+        /** Retrieve the lines of the new version.
+         * @return the lines. */
+        private Lines newLines() {
+            return working ? Lines.ofFile(path) : Lines.ofBlob(newBlob);
+        }
+
+        /** Checks whether there is a new version.
+         * @return boolean that is true if yes and false if no. */
+        private boolean hasNew() {
+            return working || newBlob != null;
+        }
+    }
+
+    /** The two versions of a file once compared. */
+    private static class Compared {
+        /** The lines of the old version. */
+        private final Lines before;
+        /** The lines of the new version. */
+        private final Lines after;
+        /** The runs of lines common to both. */
+        private final List<Diff.Match> matches;
+
+        /** Compares the versions of CHANGE. */
+        Compared(Change change) {
+            before = Lines.ofBlob(change.oldBlob);
+            after = change.newLines();
+            matches = Diff.matches(before, after);
+        }
+    }
+
+    /** Writes the differences of CHANGES, in the order given, to OUT.
+     * @param changes the files, sorted by path.
+     * @param out where the differences are written. */
+    static void write(List<Change> changes, PrintStream out) {
+        ForkJoinPool pool = WorkingTree.pool();
+        int ahead = 2 * pool.getParallelism();
+        Deque<ForkJoinTask<Compared>> pending = new ArrayDeque<>();
+        int next = 0;
+        OutputStream buffered = new BufferedOutputStream(out, BUFFER);
+        try {
+            for (Change change : changes) {
+                while (next < changes.size() && pending.size() < ahead) {
+                    Change queued = changes.get(next);
+                    pending.add(pool.submit(() -> new Compared(queued)));
+                    next += 1;
+                }
+                write(change, pending.remove().join(), buffered);
+            }
+            buffered.flush();
+        } catch (IOException e) {
+            throw Utils.error("Cannot write diff: %s", e.getMessage());
+        }
+    }
+
+    /** Writes the differences of one file.
+     * @param change the file.
+     * @param compared its versions, compared.
+     * @param out where the differences are written. */
+    private static void write(Change change, Compared compared,
+                              OutputStream out) throws IOException {
+        List<int[]> gaps = gaps(compared);
+        if (gaps.isEmpty()) {
+            return;
+        }
+        String path = change.path;
+        write(out, "diff --gitlet a/" + path + " b/" + path + "\n");
+        if (change.oldBlob == null) {
+            write(out, "new file\n");
+        } else if (!change.hasNew()) {
+            write(out, "deleted file\n");
+        }
+        write(out, "--- " + (change.oldBlob == null ? "/dev/null"
+                : "a/" + path) + "\n");
+        write(out, "+++ " + (change.hasNew() ? "b/" + path : "/dev/null")
+                + "\n");
+        int n = compared.before.size();
+        try (Lines.Cursor a = compared.before.cursor();
+             Lines.Cursor b = compared.after.cursor()) {
+            int first = 0;
+            while (first < gaps.size()) {
+                int last = first;
+                while (last + 1 < gaps.size()
+                        && gaps.get(last + 1)[0] - gaps.get(last)[1]
+                        <= 2 * CONTEXT) {
+                    last += 1;
+                }
+                int[] start = gaps.get(first);
+                int[] end = gaps.get(last);
+                int aFrom = Math.max(0, start[0] - CONTEXT);
+                int bFrom = start[2] - (start[0] - aFrom);
+                int aTo = Math.min(n, end[1] + CONTEXT);
+                int bTo = end[3] + (aTo - end[1]);
+                write(out, "@@ -" + range(aFrom, aTo) + " +"
+                        + range(bFrom, bTo) + " @@\n");
+                int at = aFrom;
+                for (int i = first; i <= last; i += 1) {
+                    int[] gap = gaps.get(i);
+                    endLine(a.copy(at, gap[0], ' ', out), out);
+                    endLine(a.copy(gap[0], gap[1], '-', out), out);
+                    endLine(b.copy(gap[2], gap[3], '+', out), out);
+                    at = gap[1];
+                }
+                endLine(a.copy(at, aTo, ' ', out), out);
+                first = last + 1;
+            }
+        }
+    }
+
+    /** Finds the changed regions of two compared versions.
+     * @param compared the versions.
+     * @return for each region, in order, its first line and one past
+     * its last in the old version, then the same in the new. */
+    private static List<int[]> gaps(Compared compared) {
+        List<int[]> result = new ArrayList<>();
+        List<Diff.Match> matches = new ArrayList<>(compared.matches);
+        matches.add(new Diff.Match(compared.before.size(),
+                compared.after.size(), 0));
+        int a = 0;
+        int b = 0;
+        for (Diff.Match match : matches) {
+            if (a < match.first() || b < match.second()) {
+                result.add(new int[] {a, match.first(), b, match.second()});
+            }
+            a = match.first() + match.length();
+            b = match.second() + match.length();
+        }
+        return result;
+    }
+
+    /** Formats a range of lines for a hunk header, as one-based start
+     * and length; the length is left out when it is one, and an empty
+     * range starts at the line before it.
+     * @param from the first line.
+     * @param to one past the last line.
+     * @return the range. */
+    private static String range(int from, int to) {
+        int length = to - from;
+        if (length == 1) {
+            return Integer.toString(from + 1);
+        }
+        return (length == 0 ? from : from + 1) + "," + length;
+    }
+
+    /** Marks a last line that lacked a newline.
+     * @param ended whether the lines written ended in a newline.
+     * @param out where they were written. */
+    private static void endLine(boolean ended, OutputStream out)
+        throws IOException {
+        if (!ended) {
+            write(out, "\n" + NO_NEWLINE);
+        }
+    }
+
+    /** Writes TEXT to OUT.
+     * @param out the stream.
+     * @param text the text. */
+    private static void write(OutputStream out, String text)
+        throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -3,11 +3,23 @@ package gitlet;
 import ucb.junit.textui;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /** The suite of all JUnit tests for the gitlet package.
  *  @author Noor Gill
@@ -43,6 +55,173 @@ public class UnitTest {
         assertEquals(ids1, ids2);
     }
 
-}
+    /** The lines of TEXT.
+     * @param text the contents of a file.
+     * @return its lines. */
+    private static Lines lines(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return Lines.read(() -> new ByteArrayInputStream(bytes));
+    }
+
+    /** Merges OURS and THEIRS against BASE into OUT.
+     * @return whether there were conflicts. */
+    private static boolean merge(String base, String ours, String theirs,
+                                 ByteArrayOutputStream out)
+        throws IOException {
+        return new Merge3(lines(base), lines(ours), lines(theirs)).write(out);
+    }
+
+    /** Changes to different lines on the two sides are both kept. */
+    @Test
+    public void mergeSeparateChangesTest() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(merge("a\nb\nc\nd\ne\n", "A\nb\nc\nd\ne\n",
+                "a\nb\nc\nd\nE\nf\n", out));
+        assertEquals("A\nb\nc\nd\nE\nf\n", out.toString("UTF-8"));
+    }
+
+    /** The same change on both sides is taken once. */
+    @Test
+    public void mergeSameChangeTest() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(merge("a\nb\nc\n", "a\nB\nc\n", "a\nB\nc\n", out));
+        assertEquals("a\nB\nc\n", out.toString("UTF-8"));
+    }
+
+    /** Only the lines changed differently on the two sides conflict,
+     * with the base's lines between them in the diff3 style. */
+    @Test
+    public void mergeConflictDiff3Test() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(merge("a\nb\nc\nd\n", "a\nB\nc\nD\n",
+                "a\nX\nc\nd\n", out));
+        assertEquals("a\n<<<<<<< HEAD\nB\n||||||| base\nb\n=======\nX\n"
+                + ">>>>>>>\nc\nD\n", out.toString("UTF-8"));
+    }
+
+    /** The merge style leaves out the base's lines, and a conflict
+     * ending a file without a newline still ends its lines. */
+    @Test
+    public void mergeConflictStyleTest() throws IOException {
+        System.setProperty("gitlet.merge.conflictStyle", "merge");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(merge("a\nb", "a\nB", "a\nX", out));
+            assertEquals("a\n<<<<<<< HEAD\nB\n=======\nX\n>>>>>>>\n",
+                    out.toString("UTF-8"));
+        } finally {
+            System.clearProperty("gitlet.merge.conflictStyle");
+        }
+    }
+
+    /** A regular expression narrows find to the plain runs every match
+     * must contain, and to nothing when it has an alternative. */
+    @Test
+    public void regexLiteralsTest() {
+        assertEquals(Arrays.asList("upd", "read"),
+                MessageIndex.literals("^upd.te\\s+read"));
+        assertEquals(Arrays.asList("colo"),
+                MessageIndex.literals("colou?r"));
+        assertEquals(Arrays.asList("1.2.3 ", "bcd"),
+                MessageIndex.literals("1\\.2\\.3 a{2}bcd"));
+        assertEquals(new ArrayList<String>(),
+                MessageIndex.literals("pars.r (bug|tests)"));
+        assertEquals(new ArrayList<String>(),
+                MessageIndex.literals("\\Qparser\\E"));
+    }
 
+    /** The options of log in either form, and the commits they keep. */
+    @Test
+    public void logOptionsTest() {
+        LogOptions options = LogOptions.parse("log", "--max-count=2",
+                "--since", "1970-01-02", "--until=1970-01-03T12:00");
+        long day = 24 * 60 * 60 * 1000L;
+        long zone = TimeZone.getDefault().getOffset(day);
+        assertEquals(2, options.maxCount());
+        assertTrue(options.past(day - zone - 1));
+        assertFalse(options.shows(day - zone - 1));
+        assertTrue(options.shows(day - zone));
+        assertTrue(options.shows(2 * day + day / 2 - zone));
+        assertFalse(options.shows(2 * day + day / 2 - zone + 1));
+        assertFalse(options.past(3 * day));
+        assertEquals(Integer.MAX_VALUE, LogOptions.parse("log").maxCount());
+    }
 
+    /** An unknown option, a missing value or a bad date is rejected. */
+    @Test
+    public void logOptionsRejectedTest() {
+        String[][] bad = {{"log", "--bogus", "1"}, {"log", "--max-count"},
+            {"log", "--since=yesterday"}, {"log", "--max-count=x"}};
+        for (String[] args : bad) {
+            try {
+                LogOptions.parse(args);
+                fail("Accepted " + String.join(" ", args));
+            } catch (ArrayIndexOutOfBoundsException e) {
+                continue;
+            }
+        }
+    }
+
+    /** A delta rebuilds its target from its base, and a small edit to a
+     * large file makes a small delta. */
+    @Test
+    public void deltaTest() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i += 1) {
+            text.append("line ").append(i).append('\n');
+        }
+        byte[] base = text.toString().getBytes(StandardCharsets.UTF_8);
+        text.insert(700, "an edit\n");
+        byte[] target = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] delta = Delta.encode(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertTrue(delta.length < 64);
+        byte[] empty = new byte[0];
+        assertArrayEquals(target, Delta.apply(empty,
+                Delta.encode(empty, target)));
+        assertArrayEquals(empty, Delta.apply(base,
+                Delta.encode(base, empty)));
+    }
+
+    /** Variable-length numbers read back as written. */
+    @Test
+    public void varintTest() {
+        long[] values = {0, 1, 127, 128, 300, 1L << 31, Long.MAX_VALUE};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long value : values) {
+            Delta.writeVarint(out, value);
+        }
+        byte[] data = out.toByteArray();
+        int[] pos = {0};
+        for (long value : values) {
+            assertEquals(value, Delta.readVarint(data, pos));
+        }
+        assertEquals(data.length, pos[0]);
+    }
+
+    /** Compressed bytes inflate back to the original, and contents too
+     * small or too random to gain are left as they are. */
+    @Test
+    public void compressionTest() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i += 1) {
+            text.append("a line that repeats\n");
+        }
+        byte[] data = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = Compression.compress(data);
+        assertTrue(compressed.length < data.length / 4);
+        assertArrayEquals(data, Compression.inflate(compressed, 0));
+        assertNull(Compression.compress(
+                "short".getBytes(StandardCharsets.UTF_8)));
+        byte[] random = new byte[4096];
+        new Random(61).nextBytes(random);
+        assertNull(Compression.compress(random));
+        System.setProperty("gitlet.compression.level", "0");
+        try {
+            assertNull(Compression.compress(data));
+        } finally {
+            System.clearProperty("gitlet.compression.level");
+        }
+    }
+
+}
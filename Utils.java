@@ -9,8 +9,11 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -59,6 +62,84 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Files at least this long are hashed through memory mappings. */
+    static final long MAP_THRESHOLD = 1L << 24;
+    /** Size of each memory-mapped window when hashing a large file. */
+    private static final long MAP_WINDOW = 1L << 28;
+    /** Size of the buffer through which smaller files are hashed. */
+    private static final int HASH_BUFFER = 1 << 16;
+
+    /** A SHA-1 digest reused by each thread. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+            }
+        });
+    /** The buffer through which each thread reads smaller files. */
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFERS =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(HASH_BUFFER));
+
+    /** Returns the SHA-1 hash of the contents of FILE, which must be a
+     *  normal file.  The bytes are streamed through a FileChannel (or
+     *  memory-mapped, for files of at least MAP_THRESHOLD bytes) into a
+     *  reused digest, so the heap used does not grow with the file.  The
+     *  result is the same as sha1(readContents(FILE)).  Throws
+     *  IllegalArgumentException in case of problems. */
+    static String sha1(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                    long len = Math.min(MAP_WINDOW, size - pos);
+                    md.update(channel.map(FileChannel.MapMode.READ_ONLY,
+                                          pos, len));
+                }
+            } else {
+                ByteBuffer buffer = HASH_BUFFERS.get();
+                buffer.clear();
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    md.update(buffer);
+                    buffer.clear();
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return toHex(md.digest());
+    }
+
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] bytes) {
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            result[2 * i + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(result);
+    }
+
+    /** Returns the bytes of the hexadecimal numeral HEX, which must have
+     *  an even number of digits. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                    hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -132,6 +213,33 @@ class Utils {
         }
     }
 
+    /** Copy the contents of SOURCE to TARGET, creating or overwriting it
+     *  as needed, with FileChannel.transferTo, so that the bytes are
+     *  moved by the operating system without passing through the Java
+     *  heap.  Throws IllegalArgumentException in case of problems. */
+    static void copyContents(File source, File target) {
+        if (target.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        try (FileChannel in = FileChannel.open(source.toPath(),
+                StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long done = 0;
+            while (done < size) {
+                long n = in.transferTo(done, size - done, out);
+                if (n == 0) {
+                    break;
+                }
+                done += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      * throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -160,7 +268,8 @@ class Utils {
         new FilenameFilter() {
             @Override
             public boolean accept(File dir, String name) {
-                return new File(dir, name).isFile();
+                return new File(dir, name).isFile()
+                    && !name.startsWith(Durable.TEMP_PREFIX);
             }
         };
 
@@ -233,6 +342,29 @@ class Utils {
         System.out.println();
     }
 
+    /** Whether an error was reported since failed() was last called. */
+    private static boolean failure;
+
+    /** Print an error message as for message, noting that the command
+     *  that reported it failed. */
+    static void fail(String msg, Object... args) {
+        message(msg, args);
+        failure = true;
+    }
+
+    /** Note that the command being run failed, without a message. */
+    static void noteFailure() {
+        failure = true;
+    }
+
+    /** Return whether an error was reported since the last call, and
+     *  forget it. */
+    static boolean failed() {
+        boolean result = failure;
+        failure = false;
+        return result;
+    }
+
     /** FUNCTIONS */
 
     /** Represents a function from T1 -> T2.  The apply method contains the
@@ -0,0 +1,168 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Scans the working tree against the head commit and the staging
+ * area. Directories are walked and candidate files hashed in parallel
+ * on a fork-join pool whose parallelism is set by the scan.threads
+ * setting (the number of processors by default).
+ * @author Noor Gill */
+class WorkingTree {
+
+    /** Fewest tracked files hashed by one task before splitting. */
+    private static final int HASH_BATCH = 16;
+
+    /** The pool that scans and diffs run on, made when first needed. */
+    private static ForkJoinPool pool;
+
+    /** Retrieve the pool that scans and diffs run on.
+     * @return the pool. */
+    static ForkJoinPool pool() {
+        if (pool == null) {
+            int threads = Config.getInt("scan.threads",
+                    Runtime.getRuntime().availableProcessors());
+            pool = new ForkJoinPool(Math.max(1, threads));
+        }
+        return pool;
+    }
+
+    /** Scans the working tree in the current directory.
+     * @param head the head commit.
+     * @param stage the staging area, or null if nothing is staged.
+     * @return the modified, deleted, untracked and staged files. */
+    static Status scan(Commit head, Stage stage) {
+        Status result = new Status();
+        Set<String> staged = new HashSet<>();
+        Set<String> removed = new HashSet<>();
+        if (stage != null) {
+            staged.addAll(stage.getStagedToClear());
+            removed.addAll(stage.getForRemoval());
+        }
+        for (String file : staged) {
+            result.addStaged(file);
+        }
+        for (String file : removed) {
+            result.addRemoved(file);
+        }
+        List<String> present = new ArrayList<>();
+        pool().invoke(new Walk(new File("."), "", present));
+        Set<String> inTree = new HashSet<>(present);
+        List<String> candidates = new ArrayList<>();
+        for (String file : present) {
+            if (head.contains(file)) {
+                if (!staged.contains(file)) {
+                    candidates.add(file);
+                }
+            } else if (!staged.contains(file)) {
+                result.addUntracked(file);
+            }
+        }
+        for (String file : head.getFileUpdatedToStage()) {
+            if (!inTree.contains(file) && !removed.contains(file)) {
+                result.addDeleted(file);
+            }
+        }
+        pool().invoke(new Compare(head, candidates, 0, candidates.size(),
+                result));
+        return result;
+    }
+
+    /** Lists the plain files of one directory and, in parallel, of each
+     * directory below it, skipping the repository itself. */
+    private static class Walk extends RecursiveAction {
+        /** Version of the serialized form, which is never used. */
+        private static final long serialVersionUID = 4196104386309971027L;
+        /** The directory listed. */
+        private final File dir;
+        /** The path of the directory relative to the working tree,
+         * ending in a separator unless it is the working tree. */
+        private final String prefix;
+        /** Collects the path of every plain file found. */
+        private final List<String> found;
+
+        /** A walk of DIR, whose relative path is PREFIX, adding plain
+         * files to FOUND. */
+        Walk(File dir, String prefix, List<String> found) {
+            this.dir = dir;
+            this.prefix = prefix;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                return;
+            }
+            List<Walk> below = new ArrayList<>();
+            List<String> here = new ArrayList<>();
+            for (File file : files) {
+                String name = file.getName();
+                if (file.isDirectory()) {
+                    if (!prefix.isEmpty() || !name.equals(".gitlet")) {
+                        below.add(new Walk(file, prefix + name + "/",
+                                new ArrayList<>()));
+                    }
+                } else if (file.isFile()) {
+                    here.add(prefix + name);
+                }
+            }
+            invokeAll(below);
+            for (Walk walk : below) {
+                here.addAll(walk.found);
+            }
+            found.addAll(here);
+        }
+    }
+
+    /** Hashes a range of tracked files, splitting the range among
+     * workers, and records those that differ from the head commit. */
+    private static class Compare extends RecursiveAction {
+        /** Version of the serialized form, which is never used. */
+        private static final long serialVersionUID = 6184609622128221609L;
+        /** The head commit. */
+        private final Commit head;
+        /** The tracked files present in the working tree. */
+        private final List<String> files;
+        /** The first index of the range. */
+        private final int from;
+        /** One past the last index of the range. */
+        private final int to;
+        /** Where modified files are recorded. */
+        private final Status result;
+
+        /** A comparison against HEAD of FILES[FROM .. TO - 1], recording
+         * modified files in RESULT. */
+        Compare(Commit head, List<String> files, int from, int to,
+                Status result) {
+            this.head = head;
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > HASH_BATCH) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Compare(head, files, from, mid, result),
+                        new Compare(head, files, mid, to, result));
+                return;
+            }
+            Index index = Index.shared();
+            for (int i = from; i < to; i += 1) {
+                String file = files.get(i);
+                String id = index.hash(new File(file));
+                if (!id.equals(head.blob(file))) {
+                    result.addModified(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package gitlet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Measures the delta encoding of successive versions of a file. For
+ * each limit on the length of a chain of deltas, it stores a series of
+ * one-line edits of a synthetic file the way Blobs does, and reports
+ * the compression ratio against the time taken to rebuild a version.
+ *
+ * Usage: java gitlet.DeltaBenchmark [LINES [VERSIONS]]
+ * @author Noor Gill */
+public class DeltaBenchmark {
+
+    /** Chain depth limits measured. */
+    private static final int[] DEPTHS = {1, 2, 5, 10, 20, 50};
+    /** Number of times each version is rebuilt when timing. */
+    private static final int ROUNDS = 5;
+
+    /** Runs the benchmark.
+     * @param args the number of lines and of versions. */
+    public static void main(String... args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        List<byte[]> versions = versions(lines, count);
+        long raw = 0;
+        for (byte[] version : versions) {
+            raw += version.length;
+        }
+        System.out.printf("%d versions of a %d-byte file%n", count,
+                versions.get(0).length);
+        System.out.printf("%6s %12s %8s %14s%n", "depth", "stored",
+                "ratio", "rebuild (us)");
+        for (int depth : DEPTHS) {
+            run(versions, depth, raw);
+        }
+    }
+
+    /** Stores VERSIONS with chains at most DEPTH long and prints the
+     * results.
+     * @param versions the successive versions.
+     * @param depth the limit on the length of a chain.
+     * @param raw the total size of the versions. */
+    private static void run(List<byte[]> versions, int depth, long raw) {
+        List<byte[]> stored = new ArrayList<>();
+        int[] depths = new int[versions.size()];
+        long size = 0;
+        for (int i = 0; i < versions.size(); i += 1) {
+            byte[] version = versions.get(i);
+            byte[] delta = null;
+            if (i > 0 && depths[i - 1] < depth) {
+                delta = Delta.encode(versions.get(i - 1), version);
+            }
+            if (delta != null && delta.length < version.length / 2) {
+                depths[i] = depths[i - 1] + 1;
+                stored.add(delta);
+                size += delta.length;
+            } else {
+                stored.add(null);
+                size += version.length;
+            }
+        }
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r += 1) {
+            for (int i = 0; i < versions.size(); i += 1) {
+                rebuild(versions, stored, i);
+            }
+        }
+        double micros = (System.nanoTime() - start) / 1e3
+                / (ROUNDS * versions.size());
+        System.out.printf("%6d %12d %8.2f %14.1f%n", depth, size,
+                (double) raw / size, micros);
+    }
+
+    /** Rebuilds version I by replaying its chain of deltas from the
+     * nearest whole version, with no cache.
+     * @param versions the successive versions.
+     * @param stored the delta of each version, or null if stored whole.
+     * @param i the version rebuilt.
+     * @return its contents. */
+    private static byte[] rebuild(List<byte[]> versions,
+                                  List<byte[]> stored, int i) {
+        if (stored.get(i) == null) {
+            return versions.get(i);
+        }
+        return Delta.apply(rebuild(versions, stored, i - 1), stored.get(i));
+    }
+
+    /** Makes a synthetic file and a series of one-line edits of it.
+     * @param lines the number of lines of the file.
+     * @param count the number of versions.
+     * @return the versions. */
+    private static List<byte[]> versions(int lines, int count) {
+        Random random = new Random(61);
+        String[] text = new String[lines];
+        for (int i = 0; i < lines; i += 1) {
+            text[i] = "key" + i + " = " + random.nextInt(1 << 20);
+        }
+        List<byte[]> result = new ArrayList<>();
+        for (int v = 0; v < count; v += 1) {
+            result.add((String.join("\n", text) + "\n").getBytes());
+            int line = random.nextInt(lines);
+            text[line] = "key" + line + " = " + random.nextInt(1 << 20);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/** Measures what crash-safe writing costs. For several numbers of
+ * objects, it writes that many object files into fan-out directories
+ * and then a ref, as a commit does, along four paths: in place with no
+ * flush, as gitlet wrote before Durable; through temporary files renamed
+ * into place with no flush; each forced before its rename, with the
+ * directories synced once at the end, as gitlet now does; and with the
+ * directory synced after every file as well.
+ *
+ * Usage: java gitlet.DurabilityBenchmark [ROUNDS [SIZE]]
+ * @author Noor Gill */
+public class DurabilityBenchmark {
+
+    /** Numbers of objects written by one command. */
+    private static final int[] COUNTS = {1, 10, 100, 1000};
+    /** The ways of writing measured. */
+    private static final String[] MODES = {"unsafe", "atomic", "group",
+        "each"};
+
+    /** Runs the benchmark in a scratch directory.
+     * @param args the number of rounds and the size of each object. */
+    public static void main(String... args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        File scratch = Files.createTempDirectory("durability").toFile();
+        System.out.printf("%d-byte objects, best of %d rounds%n", size,
+                rounds);
+        System.out.printf("%8s", "objects");
+        for (String mode : MODES) {
+            System.out.printf(" %12s", mode + " (ms)");
+        }
+        System.out.println();
+        try {
+            for (int count : COUNTS) {
+                System.out.printf("%8d", count);
+                for (String mode : MODES) {
+                    double best = Double.MAX_VALUE;
+                    for (int r = 0; r < rounds; r += 1) {
+                        best = Math.min(best, run(scratch, mode, count,
+                                size, r));
+                    }
+                    System.out.printf(" %12.2f", best);
+                }
+                System.out.println();
+            }
+        } finally {
+            delete(scratch);
+        }
+    }
+
+    /** Writes COUNT objects of SIZE bytes and a ref one way.
+     * @param scratch the directory written in.
+     * @param mode how the files are written.
+     * @param count the number of objects.
+     * @param size the size of each object.
+     * @param round the round, which seeds the contents.
+     * @return the time taken in milliseconds. */
+    private static double run(File scratch, String mode, int count, int size,
+                              int round) {
+        File dir = new File(scratch, mode + count + "-" + round);
+        File ref = new File(dir, "ref");
+        Random random = new Random(round);
+        byte[][] objects = new byte[count][size];
+        File[] files = new File[count];
+        for (int i = 0; i < count; i += 1) {
+            random.nextBytes(objects[i]);
+            String id = Utils.sha1(objects[i]);
+            files[i] = Utils.join(dir, id.substring(0, 2), id.substring(2));
+            files[i].getParentFile().mkdirs();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i += 1) {
+            write(mode, files[i], objects[i]);
+        }
+        if (mode.equals("group")) {
+            Durable.sync();
+        }
+        write(mode, ref, Utils.sha1(objects[0]) + "\n");
+        if (mode.equals("group")) {
+            Durable.sync();
+        }
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    /** Writes one file one way.
+     * @param mode how the file is written.
+     * @param file the file.
+     * @param contents its contents. */
+    private static void write(String mode, File file, Object contents) {
+        if (mode.equals("unsafe")) {
+            Utils.writeContents(file, contents);
+            return;
+        }
+        System.setProperty("gitlet.fsync",
+                String.valueOf(!mode.equals("atomic")));
+        Durable.write(file, contents);
+        if (!mode.equals("group")) {
+            Durable.sync();
+        }
+    }
+
+    /** Deletes a directory and everything in it.
+     * @param file the directory or file. */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
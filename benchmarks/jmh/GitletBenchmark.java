@@ -0,0 +1,170 @@
+package gitlet;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of the core gitlet operations on a synthetic
+ * repository (see SyntheticRepo) whose size is set by the commits,
+ * files and fileSize parameters, e.g.
+ *
+ *     make jmh JMH_FLAGS="-p commits=10000 GitletBenchmark.log"
+ *
+ * Each trial builds its repository afresh in the current directory.
+ * Results are written as JSON by the jmh target, for comparing one
+ * version against another.
+ * @author Noor Gill */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GitletBenchmark {
+
+    /** The number of commits on master. */
+    @Param({"100", "1000"})
+    private int commits;
+    /** The number of files tracked. */
+    @Param({"50"})
+    private int files;
+    /** The size of each file. */
+    @Param({"4096"})
+    private int fileSize;
+
+    /** The repository. */
+    private SyntheticRepo synthetic;
+    /** The repository as loaded by a command. */
+    private Tree repo;
+    /** The head of master. */
+    private Commit master;
+    /** The head of the other branch. */
+    private Commit other;
+    /** Contents of one of the files. */
+    private byte[] contents;
+    /** Where System.out pointed before the trial. */
+    private PrintStream out;
+
+    /** A file changed before each call of the benchmarks that stage it. */
+    @State(Scope.Thread)
+    public static class Change {
+        /** Counts the changes made. */
+        private int made;
+        /** The name of the file changed last. */
+        private String file;
+
+        /** Rewrites a line of a file, so that adding it stages a change.
+         * @param bench the benchmark, holding the repository. */
+        @Setup(Level.Invocation)
+        public void edit(GitletBenchmark bench) {
+            made += 1;
+            bench.synthetic.edit(made, 0);
+            file = SyntheticRepo.file(made % bench.files);
+        }
+    }
+
+    /** Builds the repository and loads it. */
+    @Setup(Level.Trial)
+    public void build() {
+        synthetic = new SyntheticRepo(commits, files, fileSize);
+        synthetic.build();
+        repo = Tree.load();
+        master = CommitCache.shared().get(Storage.readRef("master"));
+        other = CommitCache.shared().get(
+                Storage.readRef(SyntheticRepo.OTHER));
+        contents = Utils.readContents(new File(SyntheticRepo.file(0)));
+        out = System.out;
+        System.setOut(SyntheticRepo.QUIET);
+    }
+
+    /** Puts back System.out. */
+    @TearDown(Level.Trial)
+    public void restore() {
+        System.setOut(out);
+    }
+
+    /** Hashes the contents of a file held in memory.
+     * @return the id. */
+    @Benchmark
+    public String sha1Bytes() {
+        return Utils.sha1((Object) contents);
+    }
+
+    /** Hashes a file by streaming it from disk.
+     * @return the id. */
+    @Benchmark
+    public String sha1File() {
+        return Utils.sha1(new File(SyntheticRepo.file(0)));
+    }
+
+    /** Stages a changed file.
+     * @param change the change.
+     * @return the stage. */
+    @Benchmark
+    public Stage stageAdd(Change change) {
+        Stage stage = new Stage(master);
+        stage.add(change.file);
+        return stage;
+    }
+
+    /** Makes a commit of a changed file, storing its blob.
+     * @param change the change.
+     * @return the commit. */
+    @Benchmark
+    public Commit commit(Change change) {
+        Stage stage = new Stage(master);
+        stage.add(change.file);
+        return new Commit(stage, "benchmark " + change.made);
+    }
+
+    /** Prints the history of master. */
+    @Benchmark
+    public void log() {
+        repo.log();
+    }
+
+    /** Prints every commit. */
+    @Benchmark
+    public void globalLog() {
+        repo.globalLog();
+    }
+
+    /** Finds the split point of master and the other branch.
+     * @return the split point. */
+    @Benchmark
+    public Commit splitPoint() {
+        Branch current = new Branch("master", master);
+        return current.splitPoint(current, new Branch(SyntheticRepo.OTHER,
+                other));
+    }
+
+    /** Merges the other branch into master, without committing.
+     * @return the merged branch. */
+    @Benchmark
+    public Branch merge() {
+        Branch current = new Branch("master", master);
+        current.merge(new Branch(SyntheticRepo.OTHER, other));
+        return current;
+    }
+
+    /** Loads the repository and saves it, as every command does.
+     * @return the repository. */
+    @Benchmark
+    public Tree loadAndSave() {
+        Tree loaded = Main.developRepo();
+        Main.serialization(loaded);
+        return loaded;
+    }
+}
@@ -0,0 +1,145 @@
+package gitlet;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/** Builds a synthetic repository in the current directory for the JMH
+ * benchmarks. The master branch has COMMITS commits, each rewriting one
+ * of FILES files of FILESIZE bytes; a branch named other leaves master
+ * half-way and has COMMITS / 2 commits of its own, rewriting lines in
+ * the second half of each file where master rewrites the first.
+ *
+ * Since gitlet works on the current directory, the benchmarks run in a
+ * scratch directory (see the jmh target of the Makefile). A repository
+ * is only built where the directory is empty or holds an earlier
+ * synthetic repository, marked by MARKER.
+ * @author Noor Gill */
+class SyntheticRepo {
+
+    /** Marks a synthetic repository; it is kept in the repository, as
+     * checkout deletes untracked files in the working tree. */
+    static final File MARKER = Utils.join(Storage.GITLET, "bench");
+    /** Name of the branch that leaves master. */
+    static final String OTHER = "other";
+    /** Length of each line of the synthetic files. */
+    private static final int LINE = 64;
+
+    /** Prints nothing, for commands whose output is not measured. */
+    static final PrintStream QUIET =
+            new PrintStream(OutputStream.nullOutputStream());
+
+    /** The number of commits on master. */
+    private final int commits;
+    /** The number of files tracked. */
+    private final int files;
+    /** The size of each file. */
+    private final int fileSize;
+    /** Source of the synthetic contents. */
+    private final Random random = new Random(61);
+
+    /** A repository of COMMITS commits over FILES files of FILESIZE
+     * bytes. */
+    SyntheticRepo(int commits, int files, int fileSize) {
+        this.commits = commits;
+        this.files = files;
+        this.fileSize = fileSize;
+    }
+
+    /** Retrieve the name of one of the synthetic files.
+     * @param i its number.
+     * @return its name. */
+    static String file(int i) {
+        return "file" + i + ".txt";
+    }
+
+    /** Clears the current directory and builds the repository in it,
+     * leaving master checked out. */
+    void build() {
+        clear();
+        Storage.GITLET.mkdirs();
+        Utils.writeContents(MARKER, "");
+        PrintStream out = System.out;
+        System.setOut(QUIET);
+        try {
+            Tree repo = Tree.init();
+            for (int i = 0; i < files; i += 1) {
+                Utils.writeContents(new File(file(i)), contents());
+                repo.add(file(i));
+            }
+            repo.commit("files");
+            for (int i = 1; i < commits; i += 1) {
+                if (i == commits / 2) {
+                    repo.addBranch(OTHER);
+                }
+                edit(i, 0);
+                repo.add(file(i % files));
+                repo.commit("master " + i);
+            }
+            repo.save();
+            repo.checkout1(OTHER);
+            for (int i = commits / 2; i < commits; i += 1) {
+                edit(i, fileSize / 2);
+                repo.add(file(i % files));
+                repo.commit("other " + i);
+            }
+            repo.checkout1("master");
+            repo.save();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /** Rewrites one line of a file.
+     * @param i the number of the commit, which picks the file.
+     * @param at where the line starts. */
+    void edit(int i, int at) {
+        File file = new File(file(i % files));
+        byte[] data = Utils.readContents(file);
+        int start = Math.min(at + LINE * (i / files % 8), data.length - LINE);
+        for (int j = start; j < start + LINE - 1; j += 1) {
+            data[j] = (byte) ('a' + random.nextInt(26));
+        }
+        Utils.writeContents(file, data);
+    }
+
+    /** Retrieve the text of a new synthetic file.
+     * @return FILESIZE bytes of lines of letters. */
+    private byte[] contents() {
+        byte[] data = new byte[Math.max(fileSize, LINE)];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = i % LINE == LINE - 1 ? (byte) '\n'
+                    : (byte) ('a' + random.nextInt(26));
+        }
+        return data;
+    }
+
+    /** Deletes the plain files and repository in the current directory,
+     * refusing if it holds anything but a synthetic repository. */
+    static void clear() {
+        File[] here = new File(".").listFiles();
+        if (here == null || here.length == 0) {
+            return;
+        }
+        if (!MARKER.isFile()) {
+            throw new IllegalStateException("Benchmarks must run in an "
+                    + "empty scratch directory, not "
+                    + new File(".").getAbsolutePath());
+        }
+        for (File file : here) {
+            delete(file);
+        }
+    }
+
+    /** Deletes a file or a directory and everything below it.
+     * @param file the file or directory. */
+    private static void delete(File file) {
+        File[] below = file.listFiles();
+        if (below != null) {
+            for (File each : below) {
+                delete(each);
+            }
+        }
+        file.delete();
+    }
+}